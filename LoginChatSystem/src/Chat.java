@@ -1,15 +1,22 @@
+import com.carecircle.core.BatchedLineWriter;
+
 import javax.swing.*;
 import java.awt.*;
 import java.io.*;
 import java.net.Socket;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
 
 public class Chat extends JFrame {
 
     private JTextArea chatArea;
     private JTextField textInput;
     private JButton sendButton;
+    private JButton olderButton;
 
     private String username;
     private String groupName;
@@ -18,7 +25,14 @@ public class Chat extends JFrame {
     private BufferedReader br;
     private BufferedWriter bw;
 
+    // server-side history: the oldest message id shown, and an "Older" page being collected
+    private volatile long oldestId = -1;
+    private volatile boolean paging;
+    private final StringBuilder page = new StringBuilder();
+
     private static final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    // chat logs of every window: one writer thread, each group's file kept open, written every half second
+    private static final BatchedLineWriter LOG = new BatchedLineWriter("chat-log", 500, 500);
 
     public Chat(String username, String serverAddress, int port) {
         this.username = username;
@@ -47,15 +61,19 @@ public class Chat extends JFrame {
         textInput.setFont(new Font("Arial", Font.PLAIN, 18));
         sendButton = new JButton(">>");
         sendButton.setFont(new Font("Arial", Font.PLAIN, 18));
+        olderButton = new JButton("Older");
+        olderButton.setFont(new Font("Arial", Font.PLAIN, 18));
 
         JPanel contentPane = new JPanel(new BorderLayout());
         contentPane.add(textInput, BorderLayout.CENTER);
         contentPane.add(sendButton, BorderLayout.EAST);
+        contentPane.add(olderButton, BorderLayout.WEST);
 
         add(scrollPane, BorderLayout.CENTER);
         add(contentPane, BorderLayout.SOUTH);
 
         sendButton.addActionListener(e -> sendMessage());
+        olderButton.addActionListener(e -> requestOlder());
         textInput.addActionListener(e -> sendMessage());
 
         // Connect to server
@@ -99,6 +117,8 @@ public class Chat extends JFrame {
             String msgFromServer;
             try {
                 while ((msgFromServer = br.readLine()) != null) {
+                    if (msgFromServer.startsWith("HISTORY ")) { showHistory(msgFromServer); continue; }
+                    if (msgFromServer.equals("END")) { endHistory(); continue; }
                     // Add timestamp and display
                     String timestamp = dtf.format(LocalDateTime.now());
                     showMessage("[" + timestamp + "] " + msgFromServer);
@@ -111,6 +131,41 @@ public class Chat extends JFrame {
         thread.start();
     }
 
+    // earlier messages go above everything shown; the server answers with HISTORY lines and END
+    private void requestOlder() {
+        if (oldestId <= 0 || paging) return;
+        try {
+            paging = true;
+            bw.write("HISTORY|" + oldestId + "|50");
+            bw.newLine();
+            bw.flush();
+        } catch (IOException e) {
+            paging = false;
+            showMessage("[ERROR] Failed to load history: " + e.getMessage());
+        }
+    }
+
+    // HISTORY <id> <instant> <text>: shown with the time it was sent, not written to the local log again
+    private void showHistory(String line) {
+        String[] p = line.split(" ", 4);
+        if (p.length < 4) return;
+        try {
+            long id = Long.parseLong(p[1]);
+            if (oldestId < 0 || id < oldestId) oldestId = id;
+            String shown = "[" + dtf.format(LocalDateTime.ofInstant(Instant.parse(p[2]), ZoneId.systemDefault())) + "] " + p[3] + "\n";
+            if (paging) page.append(shown);
+            else SwingUtilities.invokeLater(() -> chatArea.append(shown));
+        } catch (RuntimeException ignored) {}
+    }
+
+    private void endHistory() {
+        if (!paging) return;
+        String older = page.toString();
+        page.setLength(0);
+        paging = false;
+        SwingUtilities.invokeLater(() -> chatArea.insert(older, 0));
+    }
+
     private String formatMessage(String sender, String message) {
         String timestamp = dtf.format(LocalDateTime.now());
         return "[" + timestamp + "] " + sender + ": " + message;
@@ -123,12 +178,26 @@ public class Chat extends JFrame {
 
     private void logMessage(String groupName, String message) {
         if (groupName == null || groupName.isEmpty()) return;
-        String logFileName = groupName + "_chat_log.txt";
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(logFileName, true))) {
-            writer.write(message);
-            writer.newLine();
-        } catch (IOException e) {
-            System.err.println("[ERROR] Failed to write chat log for group " + groupName + ": " + e.getMessage());
+        LOG.append(logFile(groupName), message).whenComplete((v, e) -> {
+            if (e != null) System.err.println("[ERROR] Failed to write chat log for group " + groupName + ": " + e.getMessage());
+        });
+    }
+
+    private static Path logFile(String groupName) {
+        return Path.of(groupName + "_chat_log.txt");
+    }
+
+    // closing the window ends the connection and writes out what is still queued for this group's log
+    @Override
+    public void dispose() {
+        try { if (socket != null) socket.close(); } catch (IOException ignored) {}   // unblocks the listener's readLine first
+        closeEverything();
+        super.dispose();
+        if (groupName == null || groupName.isEmpty()) return;
+        try {
+            LOG.close(logFile(groupName)).get(2, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            System.err.println("[ERROR] Chat log for group " + groupName + " not fully written: " + e.getMessage());
         }
     }
 
@@ -1,12 +1,13 @@
+import com.carecircle.core.VitalsClient;
+
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.io.*;
-import java.net.Socket;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class DoctorViewWindow extends JFrame {
     private final String host;
@@ -15,16 +16,23 @@ public class DoctorViewWindow extends JFrame {
     private final JTextField tfPatientId = new JTextField(14);
     private final JButton btnLoadPatient = new JButton("Load Patient");
     private final JButton btnLoadAll     = new JButton("Load All");
+    private final JCheckBox cbLive       = new JCheckBox("Live");
 
     private final String[] COLS = {
-            "patientId","heartRateBpm","bpSystolic","bpDiastolic",
+            "patientId","patientName","heartRateBpm","bpSystolic","bpDiastolic",
             "temperatureC","mood","dietNotes","weightKg","submittedAt"
     };
     private final DefaultTableModel model = new DefaultTableModel(COLS, 0) {
         @Override public boolean isCellEditable(int r, int c) { return false; }
     };
     private final JTable table = new JTable(model);
+    private final JLabel lblStatus = new JLabel(" ");
 
+    // what the table currently holds (null = all patients) and the server cursor after it;
+    // loading the same view again only fetches rows appended since
+    private String loadedPid;
+    private String cursor;
+    private Closeable live;   // SUBSCRIBE connection while "Live" is ticked
 
     public DoctorViewWindow(Frame owner, String host, int port) {
         super("Doctor View — Vitals");
@@ -46,6 +54,8 @@ public class DoctorViewWindow extends JFrame {
         top.add(tfPatientId);
         top.add(btnLoadPatient);
         top.add(btnLoadAll);
+        top.add(cbLive);
+        top.add(lblStatus);
 
         table.setAutoCreateRowSorter(true);
         table.setFillsViewportHeight(true);
@@ -55,28 +65,34 @@ public class DoctorViewWindow extends JFrame {
 
         btnLoadPatient.addActionListener(e -> load(false));
         btnLoadAll.addActionListener(e -> load(true));
+        cbLive.addActionListener(e -> { if (cbLive.isSelected()) startLive(); else stopLive(); });
 
         return root;
     }
 
     private void load(boolean all) {
-        String cmd;
-        if (all) {
-            cmd = "LIST ALL";
-        } else {
-            String pid = tfPatientId.getText().trim();
+        String pid = null;
+        if (!all) {
+            pid = tfPatientId.getText().trim();
             if (pid.isEmpty()) {
                 JOptionPane.showMessageDialog(this, "Enter a patient ID, or click 'Load All'.",
                         "Missing Patient ID", JOptionPane.INFORMATION_MESSAGE);
                 return;
             }
-            cmd = "LIST " + pid;
         }
+        String viewPid = pid;
+        if (!Objects.equals(pid, loadedPid)) stopLive();
+        boolean delta = cursor != null && Objects.equals(pid, loadedPid);
+        // a full load can be large: ask for it deflated (sendList handles either reply)
+        String cmd = "LIST SINCE " + (delta ? cursor : "0") + (pid == null ? "" : " " + pid) + (delta ? "" : " GZIP");
 
         setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
         btnLoadAll.setEnabled(false);
         btnLoadPatient.setEnabled(false);
-        model.setRowCount(0);
+        if (!delta) {
+            model.setRowCount(0);
+            cursor = null;
+        }
 
         SwingWorker<List<String>, Void> worker = new SwingWorker<>() {
             @Override protected List<String> doInBackground() {
@@ -93,14 +109,33 @@ public class DoctorViewWindow extends JFrame {
                     int start = 0;
                     if (lines.get(0).toLowerCase().startsWith("patientid,")) start = 1;
 
+                    String next = null;
+                    int added = 0;
+                    boolean expired = false;
                     for (int i = start; i < lines.size(); i++) {
                         String ln = lines.get(i);
                         if (ln == null || ln.trim().isEmpty() || "END".equals(ln)) continue;
-                        List<String> fields = parseCsvLine(ln);
-                        Object[] row = new Object[COLS.length];
-                        for (int c = 0; c < COLS.length; c++) row[c] = (c < fields.size()) ? fields.get(c) : "";
-                        model.addRow(row);
+                        if (ln.startsWith("CURSOR ")) { next = ln.substring(7).trim(); continue; }
+                        if (ln.startsWith("BUSY")) {
+                            JOptionPane.showMessageDialog(DoctorViewWindow.this, "Server is busy, please try again shortly.",
+                                    "Busy", JOptionPane.INFORMATION_MESSAGE);
+                            continue;
+                        }
+                        if (delta && ln.startsWith("ERROR: Cursor expired")) { expired = true; continue; }
+                        if (ln.startsWith("ERROR:")) {
+                            JOptionPane.showMessageDialog(DoctorViewWindow.this, ln, "Error", JOptionPane.ERROR_MESSAGE);
+                            continue;
+                        }
+                        model.addRow(toRow(parseCsvLine(ln)));
+                        added++;
                     }
+                    // no cursor back (error, older server): the next load starts over; nor while
+                    // Live is on (or still connecting), as pushed rows are not behind the cursor
+                    loadedPid = viewPid;
+                    cursor = live == null && !cbLive.isSelected() ? next : null;
+                    // compaction downsampled rows behind the cursor: fetch the view in full
+                    if (expired) { SwingUtilities.invokeLater(() -> load(all)); return; }
+                    lblStatus.setText(delta ? added + " new row(s)" : model.getRowCount() + " row(s)");
                 } catch (Exception ex) {
                     JOptionPane.showMessageDialog(DoctorViewWindow.this, "Load failed: " + ex.getMessage(),
                             "Error", JOptionPane.ERROR_MESSAGE);
@@ -114,28 +149,66 @@ public class DoctorViewWindow extends JFrame {
         worker.execute();
     }
 
-    /** Send LIST and read lines until END or error (with timeout). */
-    private List<String> sendList(String command) {
-        List<String> out = new ArrayList<>();
-        try (Socket socket = new Socket(host, port);
-             BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
-             BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
-
-            socket.setSoTimeout(3000); // prevent hangs
-            bw.write(command); bw.newLine(); bw.flush();
-
-            String ln;
-            while ((ln = br.readLine()) != null) {
-                out.add(ln);
-                if ("END".equals(ln)) break;
-                if (ln.startsWith("ERROR:")) break;
+    /**
+     * Pushes rows for the loaded view (patient or all) into the table as the server saves them.
+     * Pushed rows are not covered by the LIST cursor, so the next Load fetches the view in full.
+     */
+    private void startLive() {
+        String target = loadedPid == null ? "ALL" : loadedPid;
+        cursor = null;
+        new Thread(() -> {
+            try {
+                Closeable c = VitalsClient.shared(host, port).subscribe(target, null,
+                        line -> SwingUtilities.invokeLater(() -> {
+                            model.addRow(toRow(parseCsvLine(line)));
+                            lblStatus.setText(model.getRowCount() + " row(s), live");
+                        }));
+                SwingUtilities.invokeLater(() -> {
+                    if (cbLive.isSelected()) { live = c; lblStatus.setText("Live: " + target); }
+                    else try { c.close(); } catch (IOException ignored) {}
+                });
+            } catch (IOException ex) {
+                SwingUtilities.invokeLater(() -> {
+                    cbLive.setSelected(false);
+                    JOptionPane.showMessageDialog(this, "Live updates unavailable: " + ex.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                });
             }
+        }, "doctor-view-live").start();
+    }
+
+    private void stopLive() {
+        cbLive.setSelected(false);
+        if (live == null) return;
+        try { live.close(); } catch (IOException ignored) {}
+        live = null;
+    }
+
+    @Override public void dispose() {
+        stopLive();
+        super.dispose();
+    }
+
+    /**
+     * Send LIST and read lines until END or error, through the shared client (deltas on a pooled
+     * session, deflated full loads on a connection of their own).
+     */
+    private List<String> sendList(String command) {
+        try {
+            return VitalsClient.shared(host, port).lines(command, 3000);
         } catch (IOException ex) {
             SwingUtilities.invokeLater(() ->
                     JOptionPane.showMessageDialog(this, "Network error: " + ex.getMessage(),
                             "Error", JOptionPane.ERROR_MESSAGE));
+            return new ArrayList<>();
         }
-        return out;
+    }
+
+    /** LIST SINCE and SUBSCRIBE send rows in the layout of the header they send, which COLS mirrors. */
+    private Object[] toRow(List<String> fields) {
+        Object[] row = new Object[COLS.length];
+        for (int c = 0; c < COLS.length; c++) row[c] = c < fields.size() ? fields.get(c) : "";
+        return row;
     }
 
     private static List<String> parseCsvLine(String line) {
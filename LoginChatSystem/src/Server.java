@@ -1,33 +1,77 @@
+import com.carecircle.core.AdmissionControl;
+import com.carecircle.core.BatchedLineWriter;
+import com.carecircle.core.ChatHistory;
+import com.carecircle.core.ChunkedDeflate;
+import com.carecircle.core.ConnectionExecutors;
+import com.carecircle.core.Dispatchers;
+import com.carecircle.core.GroupRegistry;
+import com.carecircle.core.VitalsFrames;
+import com.carecircle.core.VitalsRecord;
+
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Server {
 
     private static final int PORT = 1000;
     private static final File CSV_FILE = new File("vitals.csv");
-
-    // groupName -> clients
-    private static final Map<String, List<ClientHandler>> chatGroups = new ConcurrentHashMap<>();
+    // platform | virtual (-Dcarecircle.chat.threads=virtual on JDK 21+)
+    private static final String THREADS = System.getProperty("carecircle.chat.threads", "platform");
+    // every client's appends to CSV_FILE go through one writer thread, whatever is queued in one write
+    private static final BatchedLineWriter CSV_OUT = new BatchedLineWriter("chat-csv-writer", 1000, 0);
+    private static final int MAX_BATCH_ROWS = 10_000;
+    // carecircle.chat.maxConnections / maxScans / backlog / retryAfterMillis
+    private static final AdmissionControl ADMISSION = AdmissionControl.fromProperties("carecircle.chat");
+    // chat lines queued per client before the overflow policy kicks in
+    private static final int OUTBOX_SIZE = Math.max(1, Integer.getInteger("carecircle.chat.outboxSize", 1024));
+    // dropOldest (default) | disconnect: what a full outbox does with a slow client
+    private static final boolean DISCONNECT_SLOW = "disconnect".equalsIgnoreCase(System.getProperty("carecircle.chat.overflow", "dropOldest"));
+    // drains outboxes; a thread is only busy while its client has lines to write
+    private static final ExecutorService WRITERS = ConnectionExecutors.perConnection(THREADS, "chat-writer");
+
+    // recent chat per group in memory, all of it under carecircle.chat.historyDir; the last REPLAY go to each joiner
+    private static final ChatHistory HISTORY = new ChatHistory(
+            Path.of(System.getProperty("carecircle.chat.historyDir", "chat-history")),
+            Integer.getInteger("carecircle.chat.historySize", 200));
+    private static final int REPLAY = Integer.getInteger("carecircle.chat.replay", 50);
+    private static final int MAX_HISTORY_PAGE = 500;
+
+    // groupName -> clients; broadcasts read it without locking, empty groups are dropped
+    private static final GroupRegistry<ClientHandler> chatGroups = new GroupRegistry<>();
 
     public static void main(String[] args) throws IOException {
         ensureCsvHeader();
 
-        System.out.println("Main Server listening on port " + PORT);
+        System.out.println("Main Server listening on port " + PORT
+                + " (" + ConnectionExecutors.effectiveMode(THREADS) + " threads)");
 
-        ExecutorService pool = Executors.newCachedThreadPool();
-        ServerSocket serverSocket = new ServerSocket(PORT);
+        ExecutorService pool = ConnectionExecutors.perConnection(THREADS, "chat-client");
+        ServerSocket serverSocket = new ServerSocket(PORT, ADMISSION.backlog());
 
         while (true) {
             Socket socket = serverSocket.accept();
+            // chat connections are long-lived, so the submission reserve is admitted like any other
+            if (ADMISSION.admit() == AdmissionControl.Admit.REJECT) {
+                try (socket) {
+                    socket.getOutputStream().write((ADMISSION.busy() + "\n").getBytes());
+                } catch (IOException ignored) {}
+                continue;
+            }
             pool.submit(() -> {
                 try {
                     new ClientHandler(socket, chatGroups).run();
                 } catch (Exception e) {
                     // ignore
+                } finally {
+                    ADMISSION.release();
                 }
             });
         }
@@ -48,12 +92,16 @@ public class Server {
         }
     }
 
-    private static synchronized void appendCsvLine(String csvLine) {
-        try (BufferedWriter w = new BufferedWriter(new FileWriter(CSV_FILE, true))) {
-            w.write(csvLine);
-            w.newLine();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    private static void appendCsvLine(String csvLine) {
+        appendCsvLines(List.of(csvLine));
+    }
+
+    // returns once the lines are in the file, next to each other; concurrent submissions share a write
+    private static void appendCsvLines(List<String> csvLines) {
+        try {
+            CSV_OUT.append(CSV_FILE.toPath(), csvLines).join();
+        } catch (CompletionException e) {
+            throw new RuntimeException(e.getCause());
         }
     }
 
@@ -86,31 +134,72 @@ public class Server {
         bw.flush();
     }
 
+    // one chat message, encoded once per wire format and shared read-only by every recipient
+    private static final class Broadcast {
+        private final String text;
+        private volatile byte[] line, frame;
+
+        Broadcast(String text) { this.text = text; }
+
+        // text clients: bw's charset and line separator
+        byte[] line() {
+            byte[] b = line;
+            if (b == null) line = b = (text + System.lineSeparator()).getBytes(Charset.defaultCharset());
+            return b;
+        }
+
+        byte[] frame() {
+            byte[] b = frame;
+            if (b == null) frame = b = VitalsFrames.encode(VitalsFrames.MESSAGE, 0, text);
+            return b;
+        }
+    }
+
     // client handler
 
     private static class ClientHandler implements Runnable {
 
         private final Socket socket;
+        private final BufferedInputStream in;
         private final BufferedReader br;
         private final BufferedWriter bw;
+        private final ReentrantLock sendLock = new ReentrantLock();
 
-        private final Map<String, List<ClientHandler>> groups;
+        private final GroupRegistry<ClientHandler> groups;
 
         private String username;
         private String groupName;
 
-        public ClientHandler(Socket socket, Map<String, List<ClientHandler>> groups)
+        // chat lines for this client, written by a WRITERS task so broadcast never blocks on the socket
+        private final ArrayDeque<Broadcast> outbox = new ArrayDeque<>();
+        private boolean draining, dead;   // guarded by outbox
+        private final OutputStream rawOut; // text connections: the writer sends encoded lines here, not through bw
+
+        // binary framed connection (first byte VitalsFrames.MAGIC): replies carry replyId, chat goes out as MESSAGE
+        private DataOutputStream fout;
+        private int replyId;
+
+        public ClientHandler(Socket socket, GroupRegistry<ClientHandler> groups)
                 throws IOException {
             this.socket = socket;
             this.groups = groups;
 
-            this.br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.br = new BufferedReader(new InputStreamReader(in));
             this.bw = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            this.rawOut = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
         }
 
         @Override
         public void run() {
             try {
+                in.mark(1);
+                if (in.read() == VitalsFrames.MAGIC) {
+                    fout = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    runFramed();
+                    return;
+                }
+                in.reset();
                 handleJoin();
 
                 String line;
@@ -120,9 +209,11 @@ public class Server {
                     } else if (line.equalsIgnoreCase("QUIT")) {
                         send("Goodbye");
                         break;
+                    } else if (line.startsWith("HISTORY|")) {
+                        history(line);
                     } else {
                         // Normal chat
-                        broadcast(username + ": " + line);
+                        chat(username + ": " + line);
                     }
                 }
             } catch (IOException ignored) {
@@ -132,6 +223,46 @@ public class Server {
             }
         }
 
+        // ------- FRAMED --------------------------------------------------------
+        // JOIN group|user first (answered with the replay), then CHAT / SUBMIT /
+        // QUERY (LIST ALL, LIST <id>, HISTORY <beforeId> <n>) / QUIT frames
+        private void runFramed() throws IOException {
+            DataInputStream din = new DataInputStream(in);
+            VitalsFrames.Frame f = VitalsFrames.read(din);
+            if (f == null || f.type() != VitalsFrames.JOIN)
+                throw new IOException("Invalid join");
+            String[] parts = f.text().split("\\|");
+            if (parts.length < 2)
+                throw new IOException("Invalid join");
+            replyId = f.id();
+            join(parts[0], parts[1]);
+
+            while ((f = VitalsFrames.read(din)) != null) {
+                replyId = f.id();
+                switch (f.type()) {
+                    case VitalsFrames.CHAT -> chat(username + ": " + f.text());
+                    case VitalsFrames.SUBMIT -> {
+                        if (!VitalsFrames.isSingleLine(f.text())) { sendFrame(VitalsFrames.ERROR, "CSV ERROR: " + VitalsFrames.MULTILINE); break; }
+                        appendCsvLine(f.text() + "," + Instant.now());
+                        sendFrame(VitalsFrames.OK, "CSV OK");
+                    }
+                    case VitalsFrames.QUERY -> {
+                        String q = f.text().trim();
+                        if (isHistoryQuery(q)) { history(q); break; }
+                        if (q.toUpperCase().endsWith(" GZIP")) q = q.substring(0, q.length() - 5).trim();   // frames are binary already
+                        if (!q.regionMatches(true, 0, "LIST ", 0, 5)) { sendAll(List.of("CSV ERROR: Unknown command", "END")); break; }
+                        String id = q.substring(5).trim();
+                        streamCsv(id.equalsIgnoreCase("ALL") ? null : id);
+                    }
+                    case VitalsFrames.QUIT -> {
+                        sendFrame(VitalsFrames.OK, "Goodbye");
+                        return;
+                    }
+                    default -> sendFrame(VitalsFrames.ERROR, "CSV ERROR: Unknown command");
+                }
+            }
+        }
+
         // ------- JOIN ----------------------------------------------------------
         private void handleJoin() throws IOException {
             String joinLine = br.readLine();
@@ -142,29 +273,73 @@ public class Server {
             if (parts.length < 3)
                 throw new IOException("Invalid join");
 
-            groupName = parts[1];
-            username = parts[2];
+            join(parts[1], parts[2]);
+        }
+
+        private void join(String group, String user) {
+            groupName = group;
+            username = user;
 
-            groups.computeIfAbsent(groupName,
-                            k -> Collections.synchronizedList(new ArrayList<>()))
-                    .add(this);
+            // sendLock is held from joining until the replay is out, so chat queued for us meanwhile follows it
+            sendLock.lock();
+            try {
+                List<ChatHistory.Entry> recent = HISTORY.recent(groupName, REPLAY, () -> groups.join(groupName, this));
+                if (!recent.isEmpty()) sendAll(historyLines(recent));
+            } finally {
+                sendLock.unlock();
+            }
 
             broadcast(username + " has joined the group.");
         }
 
+        // ------- HISTORY -------------------------------------------------------
+        // HISTORY|<beforeId>|<n> (in a QUERY frame: HISTORY <beforeId> <n>): up to n earlier
+        // messages, oldest first, then END; malformed arguments get an empty page
+        private static boolean isHistoryQuery(String q) {
+            return q.matches("(?i)HISTORY\\s+\\d{1,18}\\s+\\d{1,9}\\s*");
+        }
+
+        private void history(String cmd) {
+            String[] p = cmd.trim().split(cmd.startsWith("HISTORY|") ? "\\|" : "\\s+");
+            if (p.length != 3 || !p[1].matches("\\d{1,18}") || !p[2].matches("\\d{1,9}")) { sendAll(List.of("END")); return; }
+            int n = (int) Math.min(MAX_HISTORY_PAGE, Long.parseLong(p[2]));
+            sendAll(historyLines(HISTORY.before(groupName, Long.parseLong(p[1]), n)));
+        }
+
+        // HISTORY <id> <instant> <text> per message, then END
+        private static List<String> historyLines(List<ChatHistory.Entry> entries) {
+            List<String> lines = new ArrayList<>(entries.size() + 1);
+            for (ChatHistory.Entry e : entries) lines.add("HISTORY " + e.id() + " " + e.at() + " " + e.text());
+            lines.add("END");
+            return lines;
+        }
+
         // login handlers
         private void handleCsvCommand(String cmd) throws IOException {
 
+            // CSV|LIST ALL GZIP, CSV|LIST <id> GZIP: the same reply, deflated
+            if (cmd.startsWith("CSV|LIST ") && cmd.toUpperCase().endsWith(" GZIP")) {
+                String id = cmd.substring(9, cmd.length() - 5).trim();
+                streamCsvCompressed(id.equalsIgnoreCase("ALL") ? null : id);
+                return;
+            }
+
             // CSV|LIST ALL
             if (cmd.equalsIgnoreCase("CSV|LIST ALL")) {
-                sendCsv(bw, null);
+                streamCsv(null);
                 return;
             }
 
             // CSV|LIST <id>
             if (cmd.startsWith("CSV|LIST ")) {
                 String id = cmd.substring(9).trim();
-                sendCsv(bw, id);
+                streamCsv(id);
+                return;
+            }
+
+            // CSV|SUBMIT BATCH <n>, then n data rows
+            if (cmd.regionMatches(true, 0, "CSV|SUBMIT BATCH", 0, 16)) {
+                submitBatch(cmd.substring(16).trim());
                 return;
             }
 
@@ -180,31 +355,185 @@ public class Server {
             send("CSV ERROR: Unknown command");
         }
 
+        // validates every row, appends the accepted ones together, answers per row
+        private void submitBatch(String count) throws IOException {
+            int n;
+            try { n = Integer.parseInt(count); } catch (NumberFormatException e) { n = -1; }
+            if (n < 0 || n > MAX_BATCH_ROWS) {
+                send("CSV ERROR: usage CSV|SUBMIT BATCH <n>, 0 <= n <= " + MAX_BATCH_ROWS);
+                return;
+            }
+            List<String> rows = new ArrayList<>(n);
+            for (String r; rows.size() < n && (r = br.readLine()) != null; ) rows.add(r);
+            if (rows.size() < n) throw new IOException("Batch cut short");
+
+            String now = Instant.now().toString();
+            List<String> accepted = new ArrayList<>(n);
+            List<String> reply = new ArrayList<>(n + 2);
+            for (int i = 0; i < n; i++) {
+                String why = VitalsRecord.validateSubmission(Dispatchers.csvSplit(rows.get(i)));
+                if (why == null) accepted.add(rows.get(i) + "," + now);
+                reply.add("CSV ROW " + (i + 1) + (why == null ? " OK" : " REJECTED: " + why));
+            }
+            try {
+                if (!accepted.isEmpty()) appendCsvLines(accepted);
+                reply.add("CSV BATCH accepted=" + accepted.size() + " rejected=" + (n - accepted.size()));
+            } catch (RuntimeException e) {
+                reply.replaceAll(r -> r.endsWith(" OK") ? r.substring(0, r.length() - 3) + " NOT SAVED" : r);
+                reply.add("CSV ERROR: not saved: " + e.getMessage());
+            }
+            reply.add("END");
+            sendAll(reply);
+        }
+
+        // full-file reads are capped; past the cap the client is told to retry (submissions never wait on this)
+        private boolean startScan() {
+            if (ADMISSION.tryScan()) return true;
+            sendAll(List.of("CSV " + ADMISSION.busy(), "END"));
+            return false;
+        }
+
+        // holds sendLock so chat lines can't land in the middle of the rows
+        private void streamCsv(String filter) throws IOException {
+            if (!startScan()) return;
+            sendLock.lock();
+            try {
+                sendCsv(fout == null ? bw : new VitalsFrames.LineWriter(fout, replyId), filter);
+            } finally {
+                sendLock.unlock();
+                ADMISSION.endScan();
+            }
+        }
+
+        // DEFLATE line, then the rows as ChunkedDeflate frames; under sendLock like streamCsv
+        private void streamCsvCompressed(String filter) throws IOException {
+            if (!startScan()) return;
+            sendLock.lock();
+            try {
+                bw.write(ChunkedDeflate.MARKER);
+                bw.write('\n');
+                bw.flush();
+                OutputStream raw = socket.getOutputStream();
+                try (BufferedWriter z = new BufferedWriter(
+                        new OutputStreamWriter(ChunkedDeflate.output(raw), StandardCharsets.UTF_8), 1 << 16)) {
+                    sendCsv(z, filter);
+                }
+                raw.flush();
+            } finally {
+                sendLock.unlock();
+                ADMISSION.endScan();
+            }
+        }
+
         // chat helpers for handler
+        // a chat line: recorded in the group's history, then sent to whoever was in the group at that point
+        private void chat(String msg) {
+            Broadcast b = new Broadcast(msg);
+            for (ClientHandler c : HISTORY.append(groupName, msg, () -> groups.members(groupName)))
+                c.deliver(b);
+        }
+
+        // join/leave notices: not part of the history
         private void broadcast(String msg) {
-            List<ClientHandler> list = groups.get(groupName);
-            if (list == null) return;
+            // a lock-free snapshot, then only enqueue: no socket write happens on the sender's thread
+            Broadcast b = new Broadcast(msg);
+            for (ClientHandler c : groups.members(groupName))
+                c.deliver(b);
+        }
+
+        // queues msg for the writer; a full outbox drops its oldest line or, with DISCONNECT_SLOW, this client
+        private void deliver(Broadcast msg) {
+            boolean start = false;
+            synchronized (outbox) {
+                if (dead) return;
+                if (outbox.size() >= OUTBOX_SIZE) {
+                    if (DISCONNECT_SLOW) {
+                        dead = true;
+                        outbox.clear();
+                    } else {
+                        outbox.poll();
+                    }
+                }
+                if (!dead) {
+                    outbox.add(msg);
+                    start = !draining;
+                    draining = true;
+                }
+            }
+            if (dead) {
+                // closing the socket ends run() on its own thread, which leaves the group
+                try { socket.close(); } catch (IOException ignored) {}
+                return;
+            }
+            if (start) WRITERS.execute(this::drain);
+        }
 
-            synchronized (list) {
-                for (ClientHandler c : list)
-                    c.send(msg);
+        private void drain() {
+            while (true) {
+                List<Broadcast> batch;
+                synchronized (outbox) {
+                    if (outbox.isEmpty() || dead) { draining = false; return; }
+                    batch = new ArrayList<>(outbox);
+                    outbox.clear();
+                }
+                // bw is always flushed when sendLock is free, so raw bytes can go straight after it
+                OutputStream out = fout != null ? fout : rawOut;
+                sendLock.lock();
+                try {
+                    for (Broadcast msg : batch)
+                        out.write(fout != null ? msg.frame() : msg.line());
+                    out.flush();
+                } catch (IOException e) {
+                    synchronized (outbox) { dead = true; outbox.clear(); }
+                } finally {
+                    sendLock.unlock();
+                }
             }
         }
 
         private void leaveGroup() {
-            List<ClientHandler> list = groups.get(groupName);
-            if (list != null) {
-                list.remove(this);
+            synchronized (outbox) { dead = true; outbox.clear(); }
+            if (groups.leave(groupName, this))
                 broadcast(username + " has left the group.");
+            if (groupName != null && groups.members(groupName).isEmpty()) HISTORY.idle(groupName);   // reopened on next use
+        }
+
+        private void sendAll(List<String> lines) {
+            sendLock.lock();
+            try {
+                BufferedWriter w = fout == null ? bw : new VitalsFrames.LineWriter(fout, replyId);
+                for (String l : lines) {
+                    w.write(l);
+                    w.newLine();
+                }
+                w.flush();
+            } catch (IOException ignored) {
+            } finally {
+                sendLock.unlock();
             }
         }
 
         private void send(String msg) {
+            sendLock.lock();
             try {
                 bw.write(msg);
                 bw.newLine();
                 bw.flush();
-            } catch (IOException ignored) {}
+            } catch (IOException ignored) {
+            } finally {
+                sendLock.unlock();
+            }
+        }
+
+        private void sendFrame(byte type, String text) {
+            sendLock.lock();
+            try {
+                VitalsFrames.write(fout, type, replyId, text);
+                fout.flush();
+            } catch (IOException ignored) {
+            } finally {
+                sendLock.unlock();
+            }
         }
 
         private void closeEverything() {
@@ -1,9 +1,8 @@
+import com.carecircle.core.VitalsClient;
+
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
-import java.io.*;
-import java.net.Socket;
-import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 
 public class SwingClient extends JFrame {
@@ -21,6 +20,7 @@ public class SwingClient extends JFrame {
     private final JTextArea taDietNotes    = new JTextArea(3, 16);
     private final JTextField tfWeightKg    = new JTextField(16);
     private final JTextArea taLog          = new JTextArea(6, 40);
+    private final VitalsClient client      = VitalsClient.shared(HOST, PORT);
 
     public SwingClient() {
         super("Vitals Demo Client (Submit)");
@@ -115,22 +115,9 @@ public class SwingClient extends JFrame {
         appendLog("< " + resp);
     }
 
-    /** One-line request/response (for submit/quit). */
+    /** One-line request/response: submits over the shared session, QUIT on a connection of its own. */
     private String sendSingle(String line) {
-        try (Socket socket = new Socket(HOST, PORT);
-             BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
-             BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
-
-            bw.write(line); bw.newLine(); bw.flush();
-            socket.setSoTimeout(1500);
-            String first = br.readLine();
-            if (first == null) return "<no response>";
-            String second = br.ready() ? br.readLine() : null;
-            return (second != null) ? (first + " | " + second) : first;
-
-        } catch (IOException ex) {
-            return "ERROR: " + ex.getMessage();
-        }
+        return client.request(line, 1500);
     }
 
     // ----- helpers -----
@@ -0,0 +1,91 @@
+package com.carecircle.app;
+
+import com.carecircle.core.ConnectionExecutors;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection-capacity benchmark for the blocking servers' two execution modes. For each mode it
+ * starts an echo server that, like {@code Server} and {@code VitalsTcpServer}, parks one task per
+ * connection in {@code readLine}, opens {@code connections} idle clients, then pings every client
+ * once. Prints connect time, round-trip time, peak JVM threads and heap in use.
+ * <pre>
+ *   java com.carecircle.app.ConnectionBench [connections] [platform|virtual ...]
+ * </pre>
+ * Raise {@code ulimit -n} above twice the connection count first (client and server ends share
+ * the process).
+ */
+public final class ConnectionBench {
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        List<String> modes = args.length > 1 ? List.of(args).subList(1, args.length) : List.of("platform", "virtual");
+        System.out.println("virtual threads available: " + ConnectionExecutors.virtualThreadsAvailable());
+        System.out.printf("%-9s %7s %11s %9s %12s %9s%n", "mode", "conns", "connect ms", "ping ms", "peak threads", "heap MiB");
+        for (String mode : modes) run(mode, connections);
+    }
+
+    private static void run(String mode, int connections) throws Exception {
+        ExecutorService pool = ConnectionExecutors.perConnection(mode, "bench-conn");
+        List<Socket> clients = new ArrayList<>(connections);
+        try (ServerSocket ss = new ServerSocket(0, connections, InetAddress.getLoopbackAddress())) {
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (!ss.isClosed()) {
+                        Socket s = ss.accept();
+                        pool.execute(() -> echo(s));
+                    }
+                } catch (IOException ignored) {}
+            }, "bench-accept");
+            acceptor.start();
+            System.gc();
+            var threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+
+            long t0 = System.nanoTime();
+            int opened = 0;
+            try {
+                for (; opened < connections; opened++) clients.add(new Socket(ss.getInetAddress(), ss.getLocalPort()));
+            } catch (IOException e) {
+                System.out.println(mode + ": stopped after " + opened + " connections: " + e.getMessage());
+            }
+            long connectMs = (System.nanoTime() - t0) / 1_000_000;
+
+            t0 = System.nanoTime();
+            for (Socket c : clients) {
+                c.getOutputStream().write("PING\n".getBytes(StandardCharsets.US_ASCII));
+                c.getOutputStream().flush();
+            }
+            for (Socket c : clients) new BufferedReader(new InputStreamReader(c.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+            long pingMs = (System.nanoTime() - t0) / 1_000_000;
+
+            Runtime rt = Runtime.getRuntime();
+            long heapMiB = (rt.totalMemory() - rt.freeMemory()) >> 20;
+            System.out.printf("%-9s %7d %11d %9d %12d %9d%n", mode, clients.size(), connectMs, pingMs,
+                    threads.getPeakThreadCount(), heapMiB);
+        } finally {
+            for (Socket c : clients) try { c.close(); } catch (IOException ignored) {}
+            pool.shutdown();                        // handlers see EOF and exit; wait so the next mode starts clean
+            pool.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    /** Answers each line with "OK" until the client goes away. */
+    private static void echo(Socket s) {
+        try (s;
+             BufferedReader br = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+             Writer w = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII)) {
+            while (br.readLine() != null) { w.write("OK\n"); w.flush(); }
+        } catch (IOException ignored) {}
+    }
+
+    private ConnectionBench() {}
+}
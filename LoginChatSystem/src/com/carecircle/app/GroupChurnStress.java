@@ -0,0 +1,122 @@
+package com.carecircle.app;
+
+import com.carecircle.core.GroupRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stress test for chat group membership. {@code churners} clients, one thread each, keep joining a
+ * random group and leaving it again while {@code broadcasters} threads deliver to random groups,
+ * as {@code Server} does for every chat line. Runs {@link GroupRegistry} and the previous
+ * synchronized-list map side by side and prints joins+leaves/s, broadcasts/s and deliveries/s.
+ * Every client checks that it sees itself in its group after joining and not after leaving; at the
+ * end all clients have left, so no group may remain. Any violation is counted and makes the exit
+ * status 1.
+ * <pre>
+ *   java com.carecircle.app.GroupChurnStress [churners] [broadcasters] [groups] [seconds]
+ * </pre>
+ */
+public final class GroupChurnStress {
+    private interface Groups {
+        void join(String group, Member m);
+        boolean leave(String group, Member m);
+        List<Member> members(String group);
+        int groupCount();
+    }
+
+    private static final class Member {
+        final LongAdder received = new LongAdder();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int churners = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int broadcasters = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int groupCount = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        System.out.printf("%d churners, %d broadcasters, %d groups, %d s each%n", churners, broadcasters, groupCount, seconds);
+        System.out.printf("%-13s %13s %13s %15s %11s %7s%n", "registry", "join+leave/s", "broadcasts/s", "deliveries/s", "groups left", "errors");
+
+        GroupRegistry<Member> cow = new GroupRegistry<>();
+        long errors = run("copy-on-write", new Groups() {
+            public void join(String g, Member m) { cow.join(g, m); }
+            public boolean leave(String g, Member m) { return cow.leave(g, m); }
+            public List<Member> members(String g) { return cow.members(g); }
+            public int groupCount() { return cow.groupCount(); }
+        }, churners, broadcasters, groupCount, seconds, true);
+
+        // what Server used before: lists are never removed, a broadcast copies under the list's monitor
+        Map<String, List<Member>> old = new ConcurrentHashMap<>();
+        run("synchronized", new Groups() {
+            public void join(String g, Member m) { old.computeIfAbsent(g, k -> Collections.synchronizedList(new ArrayList<>())).add(m); }
+            public boolean leave(String g, Member m) { List<Member> l = old.get(g); return l != null && l.remove(m); }
+            public List<Member> members(String g) {
+                List<Member> l = old.get(g);
+                if (l == null) return List.of();
+                synchronized (l) { return new ArrayList<>(l); }
+            }
+            public int groupCount() { return old.size(); }
+        }, churners, broadcasters, groupCount, seconds, false);
+
+        if (errors > 0) System.exit(1);
+    }
+
+    /** @return violations seen; with {@code expectEmpty}, a group left over at the end is one too */
+    private static long run(String name, Groups groups, int churners, int broadcasters, int groupCount,
+                            int seconds, boolean expectEmpty) throws InterruptedException {
+        String[] names = new String[groupCount];
+        for (int i = 0; i < groupCount; i++) names[i] = "group-" + i;
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder churn = new LongAdder(), broadcasts = new LongAdder(), deliveries = new LongAdder(), errors = new LongAdder();
+        CountDownLatch done = new CountDownLatch(churners + broadcasters);
+        List<Thread> threads = new ArrayList<>(churners + broadcasters);
+
+        for (int i = 0; i < churners; i++) {
+            threads.add(new Thread(() -> {
+                Member me = new Member();
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                while (running.get()) {
+                    String g = names[rnd.nextInt(names.length)];
+                    groups.join(g, me);
+                    if (!groups.members(g).contains(me)) errors.increment();
+                    Thread.yield();                                        // stay in the group for a moment
+                    if (!groups.leave(g, me) || groups.members(g).contains(me)) errors.increment();
+                    churn.add(2);
+                }
+                done.countDown();
+            }, "churn-" + i));
+        }
+        for (int i = 0; i < broadcasters; i++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                while (running.get()) {
+                    List<Member> members = groups.members(names[rnd.nextInt(names.length)]);
+                    for (Member m : members) m.received.increment();
+                    deliveries.add(members.size());
+                    broadcasts.increment();
+                }
+                done.countDown();
+            }, "broadcast-" + i));
+        }
+
+        long t0 = System.nanoTime();
+        for (Thread t : threads) t.start();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        done.await();
+        double secs = (System.nanoTime() - t0) / 1e9;
+
+        int left = groups.groupCount();
+        if (expectEmpty && left != 0) errors.increment();
+        System.out.printf("%-13s %13.0f %13.0f %15.0f %11d %7d%n", name,
+                churn.sum() / secs, broadcasts.sum() / secs, deliveries.sum() / secs, left, errors.sum());
+        return errors.sum();
+    }
+}
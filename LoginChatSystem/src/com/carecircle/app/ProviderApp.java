@@ -21,12 +21,14 @@ public final class ProviderApp {
 
             var tabs = new JTabbedPane();
             tabs.addTab("Manage Patients", new ProviderPatientsPanel(providerId));
-            tabs.addTab("Vitals (View)", new VitalsViewerPanel(
+            var viewer = new VitalsViewerPanel(
                     Dispatchers.Factory.vitalsForProvider(providerId),
                     "",
                     "",
                     "Results are limited to patients assigned to you.",
-                    true));
+                    true);
+            viewer.enableLiveUpdates(providerId);
+            tabs.addTab("Vitals (View)", viewer);
             tabs.addTab("Upcoming Appointments", new UpcomingAppointmentsPanel(Dispatchers.Factory.calendarForProvider(providerId)));
 
             frame.setContentPane(tabs);
@@ -0,0 +1,65 @@
+package com.carecircle.app;
+
+import com.carecircle.core.VitalsCompactor;
+import com.carecircle.core.VitalsLog;
+import com.carecircle.core.VitalsSegments;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * One-shot converter between vitals.csv and the binary vitals log.
+ * <pre>
+ *   import [vitals.csv] [vitals.bin]   CSV (old 9-col and new 10-col rows) -> log
+ *   export [vitals.bin] [vitals.csv]   log -> CSV in the LIST layout
+ *   segment [vitals.csv] [vitals.segments]   CSV -> sealed, size-capped segments
+ *   compact [vitals.segments] [hourlyAfterDays] [dailyAfterDays]   one compaction pass over sealed segments
+ * </pre>
+ */
+public final class VitalsLogConvert {
+    public static void main(String[] args) throws IOException {
+        try {
+            run(args);
+        } catch (FileAlreadyExistsException e) {
+            System.out.println("Not converting: " + e.getFile() + " is " + e.getReason() + "; remove it first");
+        }
+    }
+
+    private static void run(String[] args) throws IOException {
+        String mode = args.length > 0 ? args[0] : "";
+        if ("import".equalsIgnoreCase(mode)) {
+            Path csv = Path.of(args.length > 1 ? args[1] : "vitals.csv");
+            Path log = Path.of(args.length > 2 ? args[2] : "vitals.bin");
+            int n = VitalsLog.importCsv(csv, log);
+            System.out.println("Imported " + n + " rows from " + csv + " into " + log);
+        } else if ("export".equalsIgnoreCase(mode)) {
+            Path log = Path.of(args.length > 1 ? args[1] : "vitals.bin");
+            Path csv = Path.of(args.length > 2 ? args[2] : "vitals.csv");
+            try (BufferedWriter bw = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+                VitalsLog.exportCsv(log, null, bw);
+            }
+            System.out.println("Exported " + log + " to " + csv);
+        } else if ("segment".equalsIgnoreCase(mode)) {
+            Path csv = Path.of(args.length > 1 ? args[1] : "vitals.csv");
+            Path dir = Path.of(args.length > 2 ? args[2] : "vitals.segments");
+            long bytes = Long.getLong("carecircle.vitals.segmentBytes", VitalsSegments.DEFAULT_SEGMENT_BYTES);
+            int n = new VitalsSegments(dir).importCsv(csv, bytes);
+            System.out.println("Copied " + n + " rows from " + csv + " into segments under " + dir);
+        } else if ("compact".equalsIgnoreCase(mode)) {
+            Path dir = Path.of(args.length > 1 ? args[1] : "vitals.segments");
+            Duration hourly = args.length > 2 ? Duration.ofDays(Long.parseLong(args[2])) : null;
+            Duration daily = args.length > 3 ? Duration.ofDays(Long.parseLong(args[3])) : null;
+            int n = new VitalsCompactor(new VitalsSegments(dir), hourly, daily).compactOnce();
+            System.out.println("Compacted " + n + " segments under " + dir);
+        } else {
+            System.out.println("Usage: VitalsLogConvert import [csv] [log] | export [log] [csv] | segment [csv] [dir]"
+                    + " | compact [dir] [hourlyAfterDays] [dailyAfterDays]");
+        }
+    }
+
+    private VitalsLogConvert() {}
+}
@@ -0,0 +1,579 @@
+package com.carecircle.app;
+
+import com.carecircle.core.AdmissionControl;
+import com.carecircle.core.VitalsFrames;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Non-blocking front end for {@link VitalsTcpServer}: a fixed set of selector loops instead of a
+ * thread per connection. Loop 0 also accepts and hands new channels out round-robin. The line
+ * protocol is unchanged: one command (or CSV submission) per connection, reply, close; or, after
+ * {@code SESSION}, tagged commands on a connection that stays open, replies queued as they complete;
+ * or, after {@code SUBSCRIBE}, rows pushed as they are saved; or, opened with {@link VitalsFrames#MAGIC},
+ * binary frames served like a session. Connections count against
+ * {@link VitalsTcpServer#ADMISSION} from accept until close.
+ * Submissions are answered when the ingest writer's future completes, without holding a thread
+ * (a full ingest queue is answered BUSY rather than stalling the loop);
+ * {@code LIST}/{@code AVG} replies are produced on worker threads and handed to the loop in
+ * {@link #CHUNK}-sized pieces; the worker pauses while a connection has more than
+ * {@link #HIGH_WATER} bytes unsent and resumes as the loop drains them on {@code OP_WRITE}.
+ * Workers are not tied to the loop count: a paused one holds only its own thread, so slow readers
+ * never stall other queries (connections, each running one query at a time, are capped by admission).
+ */
+final class VitalsNioServer implements Closeable {
+    private static final int MAX_LINE = 64 * 1024;
+    private static final int CHUNK = 16 * 1024;
+    private static final long HIGH_WATER = 256 * 1024, LOW_WATER = HIGH_WATER / 2;
+    /** A reply producer waiting this long for a client to read is given up and the connection closed. */
+    private static final long STALL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final ServerSocketChannel server;
+    private final Loop[] loops;
+    private final ExecutorService queries;
+    private final AtomicInteger next = new AtomicInteger();
+
+    VitalsNioServer(int port, int ioThreads) throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), VitalsTcpServer.ADMISSION.backlog());
+        server.configureBlocking(false);
+        loops = new Loop[Math.max(1, ioThreads)];
+        for (int i = 0; i < loops.length; i++) loops[i] = new Loop();
+        AtomicInteger n = new AtomicInteger();
+        queries = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "vitals-query-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        loops[0].post(() -> server.register(loops[0].selector, SelectionKey.OP_ACCEPT));
+    }
+
+    /** Runs loop 0 on the calling thread and the rest on their own threads. */
+    void run() {
+        for (int i = 1; i < loops.length; i++) new Thread(loops[i], "vitals-io-" + i).start();
+        loops[0].run();
+    }
+
+    @Override public void close() throws IOException {
+        for (Loop l : loops) { l.running = false; l.selector.wakeup(); }
+        queries.shutdown();
+        server.close();
+    }
+
+    /** Per-connection state, only touched on its loop's thread. */
+    private static final class Conn {
+        final SocketChannel ch;
+        ByteBuffer in = ByteBuffer.allocate(1024);
+        final Deque<ByteBuffer> out = new ArrayDeque<>();
+        boolean session, first = true, closing, eof;
+        int inflight;              // session commands still being answered
+        CompletableFuture<?> submitted = CompletableFuture.completedFuture(null);   // queries run after these
+        CompletableFuture<?> replying = CompletableFuture.completedFuture(null);    // and one at a time, after this
+        String quitTag;            // QUIT seen; Goodbye goes out after the in-flight replies
+        boolean framed;            // binary framed protocol (VitalsFrames)
+        Integer quitFrame;         // id of a framed QUIT
+        List<String> batchRows;    // rows of a SUBMIT BATCH still arriving
+        int batchSize;
+        String batchTag;
+        VitalsSubscriptions.Subscription subscription;   // SUBSCRIBE connection
+        final boolean submitOnly;  // admitted from the submission reserve
+        boolean admitted = true;   // holds an AdmissionControl slot until closed
+        final AtomicLong unsent = new AtomicLong();   // bytes in out, or posted to the loop for it
+        private final ReentrantLock drainLock = new ReentrantLock();
+        private final Condition drained = drainLock.newCondition();
+        Conn(SocketChannel ch, boolean submitOnly) { this.ch = ch; this.submitOnly = submitOnly; }
+
+        /**
+         * Called by a reply producer: waits while more than {@link #HIGH_WATER} bytes are unsent.
+         * @return false once the connection is closed or the client read nothing for {@link #STALL_NANOS}
+         */
+        boolean awaitDrain(SelectionKey k) throws InterruptedException {
+            long left = STALL_NANOS;
+            drainLock.lock();
+            try {
+                while (unsent.get() > HIGH_WATER && k.isValid()) {
+                    if (left <= 0) return false;
+                    left = drained.awaitNanos(left);
+                }
+                return k.isValid();
+            } finally {
+                drainLock.unlock();
+            }
+        }
+
+        void wakeProducers() {
+            drainLock.lock();
+            try { drained.signalAll(); } finally { drainLock.unlock(); }
+        }
+    }
+
+    /** A reply body, written on a query worker. */
+    private interface Body { void writeTo(OutputStream out) throws IOException; }
+
+    private interface Task { void run() throws IOException; }
+
+    private final class Loop implements Runnable {
+        final Selector selector;
+        final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+        volatile boolean running = true;
+
+        Loop() throws IOException { selector = Selector.open(); }
+
+        /** Runs {@code t} on this loop's thread. */
+        void post(Task t) {
+            tasks.add(t);
+            selector.wakeup();
+        }
+
+        @Override public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    for (Task t; (t = tasks.poll()) != null; ) {
+                        try { t.run(); } catch (IOException ignored) {}            // e.g. channel closed meanwhile
+                    }
+                    for (var it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                        SelectionKey k = it.next();
+                        it.remove();
+                        try {
+                            if (!k.isValid()) continue;
+                            if (k.isAcceptable()) { accept(); continue; }
+                            if (k.isReadable()) read(k);
+                            if (k.isValid() && k.isWritable()) write(k);
+                        } catch (IOException e) {
+                            closeQuietly(k);
+                        }
+                    }
+                } catch (IOException ignored) {}
+            }
+            try { selector.close(); } catch (IOException ignored) {}
+        }
+
+        private void accept() throws IOException {
+            while (true) {
+                SocketChannel ch = server.accept();
+                if (ch == null) return;
+                AdmissionControl.Admit admit = VitalsTcpServer.ADMISSION.admit();
+                if (admit == AdmissionControl.Admit.REJECT) {
+                    try (ch) { ch.write(ByteBuffer.wrap(bytes(null, VitalsTcpServer.ADMISSION.busy()))); }   // fits the send buffer
+                    catch (IOException ignored) {}
+                    continue;
+                }
+                Conn conn = new Conn(ch, admit == AdmissionControl.Admit.SUBMIT_ONLY);
+                try {
+                    ch.configureBlocking(false);
+                } catch (IOException e) {
+                    release(conn);
+                    ch.close();
+                    continue;
+                }
+                Loop target = loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+                target.post(() -> {
+                    try { ch.register(target.selector, SelectionKey.OP_READ, conn); }
+                    catch (IOException e) { release(conn); ch.close(); }
+                });
+            }
+        }
+
+        private void read(SelectionKey k) throws IOException {
+            Conn c = (Conn) k.attachment();
+            if (!c.in.hasRemaining()) {
+                if (c.in.capacity() >= MAX_LINE) { closeQuietly(k); return; }
+                c.in = ByteBuffer.allocate(c.in.capacity() * 2).put(c.in.flip());
+            }
+            int n = c.ch.read(c.in);
+            if (c.first && c.in.position() > 0 && (c.in.get(0) & 0xFF) == VitalsFrames.MAGIC) {
+                c.first = false;
+                c.framed = true;
+                c.in.flip().position(1);
+                c.in.compact();
+            }
+            if (c.framed) { frames(k, c, n); return; }
+            for (int eol; (eol = indexOf(c.in, (byte) '\n')) >= 0 && k.isValid() && !c.closing && !c.eof; ) {
+                if (!line(k, c, takeLine(c, eol, eol + 1))) return;
+            }
+            if (n >= 0 || c.closing || c.eof) return;
+            k.interestOps(k.interestOps() & ~SelectionKey.OP_READ);       // EOF stays readable; stop selecting it
+            // like BufferedReader.readLine, an unterminated last line still counts
+            if (c.in.position() > 0 && !line(k, c, takeLine(c, c.in.position(), c.in.position()))) return;
+            if (c.first) { closeQuietly(k); return; }                     // EOF, nothing sent
+            if (c.batchRows != null) {
+                c.inflight++;
+                List<String> cut = VitalsTcpServer.batchCutShort(c.batchRows.size(), c.batchSize);
+                c.batchRows = null;
+                batchDone(k, c, c.batchTag, cut);
+                if (!c.session) return;
+            }
+            c.eof = true;
+            finishIfIdle(k, c);
+        }
+
+        /** Takes every complete frame off the buffer; the buffer never needs more than one frame. */
+        private void frames(SelectionKey k, Conn c, int n) {
+            while (k.isValid() && !c.closing && !c.eof && c.in.position() >= VitalsFrames.HEADER) {
+                int len = c.in.getInt(5);
+                if (len < 0 || len > VitalsFrames.MAX_PAYLOAD) { closeQuietly(k); return; }
+                if (c.in.position() < VitalsFrames.HEADER + len) break;
+                byte type = c.in.get(0);
+                int id = c.in.getInt(1);
+                String text = new String(c.in.array(), VitalsFrames.HEADER, len, StandardCharsets.UTF_8);
+                c.in.flip().position(VitalsFrames.HEADER + len);
+                c.in.compact();
+                frame(k, c, type, id, text);
+            }
+            if (n >= 0 || c.closing || c.eof) return;
+            k.interestOps(k.interestOps() & ~SelectionKey.OP_READ);
+            c.eof = true;                                                 // a partial frame at EOF is dropped
+            finishIfIdle(k, c);
+        }
+
+        private void frame(SelectionKey k, Conn c, byte type, int id, String text) {
+            switch (type) {
+                case VitalsFrames.SUBMIT -> {
+                    c.inflight++;
+                    CompletableFuture<String> f = VitalsFrames.isSingleLine(text) ? VitalsTcpServer.submit(text, false)
+                            : CompletableFuture.completedFuture("ERROR: " + VitalsFrames.MULTILINE);
+                    c.submitted = CompletableFuture.allOf(c.submitted, f);
+                    f.thenAccept(reply -> post(() -> answered(k, c,
+                            VitalsFrames.encode(reply.startsWith("OK") ? VitalsFrames.OK : VitalsFrames.ERROR, id, reply))));
+                }
+                case VitalsFrames.QUERY -> {
+                    c.inflight++;
+                    sessionQuery(k, c, out -> VitalsTcpServer.frameQuery(text, id, c.submitOnly, new DataOutputStream(out)));
+                }
+                case VitalsFrames.QUIT -> {
+                    c.quitFrame = id;
+                    c.eof = true;
+                    k.interestOps(k.interestOps() & ~SelectionKey.OP_READ);
+                    finishIfIdle(k, c);
+                }
+                default -> queue(k, VitalsFrames.encode(VitalsFrames.ERROR, id, "ERROR: unexpected frame type " + type));
+            }
+        }
+
+        /** Handles one complete line; false once this connection reads no further. */
+        private boolean line(SelectionKey k, Conn c, String line) {
+            if (c.batchRows != null) {
+                c.batchRows.add(line);
+                if (c.batchRows.size() == c.batchSize) submitBatch(k, c);
+                return c.session || c.batchRows != null;
+            }
+            if (c.first) {
+                c.first = false;
+                if (c.submitOnly && !VitalsTcpServer.isWrite(line)) {
+                    k.interestOps(0);
+                    for (String r : VitalsTcpServer.busy(line)) queue(k, null, r);
+                    finish(k);
+                    return false;
+                }
+                if (VitalsTcpServer.isSessionStart(line)) { c.session = true; queue(k, null, VitalsTcpServer.SESSION_OK); return true; }
+                if (VitalsTcpServer.isBatch(line)) return startBatch(k, c, null, line);
+                if (VitalsSubscriptions.isSubscribe(line)) return subscribe(k, c, line);
+                k.interestOps(0);
+                dispatch(k, line);
+                return false;
+            }
+            if (c.subscription != null) {
+                if (!"QUIT".equalsIgnoreCase(line.trim())) return true;
+                unsubscribe(c);
+                queue(k, null, "Goodbye");
+                finish(k);
+                return false;
+            }
+            sessionCommand(k, c, line);
+            return true;
+        }
+
+        /** Rows are posted to this loop and queued like replies; a connection too far behind is closed. */
+        private boolean subscribe(SelectionKey k, Conn c, String line) {
+            VitalsSubscriptions.Subscriber sink = rows -> post(() -> {
+                if (!k.isValid() || c.subscription == null || c.closing) return;
+                if (c.out.size() + rows.size() > VitalsSubscriptions.MAX_BACKLOG) { closeQuietly(k); return; }
+                for (byte[] r : rows) queue(k, r);
+            });
+            try {
+                c.subscription = VitalsTcpServer.SUBSCRIBERS.subscribe(line, sink);
+                return true;
+            } catch (IllegalArgumentException e) {
+                k.interestOps(0);
+                queue(k, null, e.getMessage());
+                finish(k);
+                return false;
+            }
+        }
+
+        /** Starts collecting the rows of {@code SUBMIT BATCH <n>}; tag is null on a one-shot connection. */
+        private boolean startBatch(SelectionKey k, Conn c, String tag, String cmd) {
+            int n = VitalsTcpServer.batchSize(cmd);
+            c.batchTag = tag;
+            c.batchSize = n;
+            c.batchRows = new ArrayList<>(Math.max(0, n));
+            if (n < 0) {
+                c.batchRows = null;
+                c.inflight++;
+                batchDone(k, c, tag, VitalsTcpServer.BATCH_USAGE);
+                return c.session;
+            }
+            if (n == 0) submitBatch(k, c);
+            return c.session || c.batchRows != null;
+        }
+
+        private void submitBatch(SelectionKey k, Conn c) {
+            List<String> rows = c.batchRows;
+            String tag = c.batchTag;
+            c.batchRows = null;
+            c.inflight++;
+            if (!c.session) k.interestOps(k.interestOps() & ~SelectionKey.OP_READ);
+            CompletableFuture<List<String>> f = VitalsTcpServer.submitBatch(rows, false);
+            c.submitted = CompletableFuture.allOf(c.submitted, f);
+            f.thenAccept(reply -> post(() -> batchDone(k, c, tag, reply)));
+        }
+
+        private void batchDone(SelectionKey k, Conn c, String tag, List<String> reply) {
+            StringBuilder sb = new StringBuilder();
+            for (String r : reply) sb.append(tag == null ? r : tag + " " + r).append(System.lineSeparator());
+            if (c.session) { answered(k, c, sb.toString().getBytes(StandardCharsets.UTF_8)); return; }
+            c.inflight--;
+            queue(k, sb.toString().getBytes(StandardCharsets.UTF_8));
+            finish(k);
+        }
+
+        /** Decodes bytes [0, end) minus a trailing '\r' and drops [0, next) from the buffer. */
+        private String takeLine(Conn c, int end, int next) {
+            int e = end > 0 && c.in.get(end - 1) == '\r' ? end - 1 : end;
+            String line = new String(c.in.array(), 0, e, StandardCharsets.UTF_8);
+            c.in.flip().position(next);
+            c.in.compact();
+            return line;
+        }
+
+        /** One-shot connection: the reply is written, then the connection closes. */
+        private void dispatch(SelectionKey k, String line) {
+            if (VitalsTcpServer.isSubmit(line)) {
+                VitalsTcpServer.submit(line, false).thenAccept(reply -> post(() -> { queue(k, null, reply); finish(k); }));
+                return;
+            }
+            Conn c = (Conn) k.attachment();
+            queries.execute(() -> stream(k, c, out -> render(line, null, out), () -> finish(k)));
+        }
+
+        private void sessionCommand(SelectionKey k, Conn c, String line) {
+            String id = VitalsTcpServer.tagOf(line), cmd = VitalsTcpServer.commandOf(line);
+            if (cmd.isBlank()) { queue(k, id, "ERROR: empty command"); return; }
+            if ("QUIT".equalsIgnoreCase(cmd.trim())) {
+                c.quitTag = id;
+                c.eof = true;
+                k.interestOps(k.interestOps() & ~SelectionKey.OP_READ);
+                finishIfIdle(k, c);
+                return;
+            }
+            if (VitalsTcpServer.isBatch(cmd)) { startBatch(k, c, id, cmd); return; }
+            c.inflight++;
+            if (VitalsTcpServer.isSubmit(cmd)) {
+                CompletableFuture<String> f = VitalsTcpServer.submit(cmd, false);
+                c.submitted = CompletableFuture.allOf(c.submitted, f);
+                f.thenAccept(reply -> post(() -> answered(k, c, bytes(id, reply))));
+            } else {
+                sessionQuery(k, c, out -> render(cmd, id, out));
+            }
+        }
+
+        /**
+         * Streams a session query's reply once the submissions before it are answered. Replies go out
+         * one after another, so the chunks of two replies never interleave.
+         */
+        private void sessionQuery(SelectionKey k, Conn c, Body body) {
+            c.replying = CompletableFuture.allOf(c.submitted, c.replying).handleAsync((v, e) -> {
+                stream(k, c, body, () -> { c.inflight--; finishIfIdle(k, c); });
+                return null;
+            }, queries);
+        }
+
+        /** On a query worker: writes {@code body} through a {@link ReplyStream}, then runs {@code done} on the loop. */
+        private void stream(SelectionKey k, Conn c, Body body, Task done) {
+            try (ReplyStream out = new ReplyStream(k, c)) {
+                body.writeTo(out);
+            } catch (IOException ignored) {}                              // connection closed or stalled
+            post(done);
+        }
+
+        private void answered(SelectionKey k, Conn c, byte[] reply) {
+            c.inflight--;
+            queue(k, reply);
+            finishIfIdle(k, c);
+        }
+
+        /** After QUIT or EOF: once nothing is in flight, say Goodbye (for QUIT) and close when drained. */
+        private void finishIfIdle(SelectionKey k, Conn c) {
+            if (!c.eof || c.inflight > 0 || c.closing) return;
+            if (c.quitTag != null) queue(k, c.quitTag, "Goodbye");
+            if (c.quitFrame != null) queue(k, VitalsFrames.encode(VitalsFrames.OK, c.quitFrame, "Goodbye"));
+            finish(k);
+        }
+
+        private void finish(SelectionKey k) {
+            if (!k.isValid()) return;
+            Conn c = (Conn) k.attachment();
+            c.closing = true;
+            if (c.out.isEmpty()) closeQuietly(k);
+        }
+
+        private void queue(SelectionKey k, String id, String reply) { queue(k, bytes(id, reply)); }
+
+        private void queue(SelectionKey k, byte[] bytes) {
+            if (!k.isValid()) return;
+            ((Conn) k.attachment()).unsent.addAndGet(bytes.length);
+            enqueue(k, ByteBuffer.wrap(bytes));
+        }
+
+        /** Adds bytes already counted in {@link Conn#unsent}. */
+        private void enqueue(SelectionKey k, ByteBuffer b) {
+            if (!k.isValid()) return;
+            ((Conn) k.attachment()).out.add(b);
+            k.interestOps(k.interestOps() | SelectionKey.OP_WRITE);
+        }
+
+        private void write(SelectionKey k) throws IOException {
+            Conn c = (Conn) k.attachment();
+            long written = 0;
+            try {
+                while (!c.out.isEmpty()) {
+                    ByteBuffer b = c.out.peek();
+                    written += c.ch.write(b);
+                    if (b.hasRemaining()) return;
+                    c.out.poll();
+                }
+                if (c.closing) closeQuietly(k);
+                else k.interestOps(k.interestOps() & ~SelectionKey.OP_WRITE);
+            } finally {
+                long left = c.unsent.addAndGet(-written);
+                if (left <= LOW_WATER && left + written > LOW_WATER) c.wakeProducers();
+            }
+        }
+
+        /**
+         * Hands a reply to the loop in {@link #CHUNK}-sized pieces, blocking the writing worker while
+         * the connection is over {@link #HIGH_WATER}. Writes fail once the connection is gone; a client
+         * that stops reading is dropped after {@link #STALL_NANOS}.
+         */
+        private final class ReplyStream extends OutputStream {
+            private final SelectionKey k;
+            private final Conn c;
+            private byte[] buf = new byte[CHUNK];
+            private int n;
+
+            ReplyStream(SelectionKey k, Conn c) { this.k = k; this.c = c; }
+
+            @Override public void write(int b) throws IOException {
+                if (n == buf.length) push();
+                buf[n++] = (byte) b;
+            }
+
+            @Override public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    if (n == buf.length) push();
+                    int m = Math.min(len, buf.length - n);
+                    System.arraycopy(b, off, buf, n, m);
+                    n += m;
+                    off += m;
+                    len -= m;
+                }
+            }
+
+            /** Flushes are ignored: a chunk goes out when full, the rest on close. */
+            @Override public void flush() {}
+
+            @Override public void close() throws IOException { push(); }
+
+            private void push() throws IOException {
+                if (n == 0) return;
+                try {
+                    if (!c.awaitDrain(k)) {
+                        post(() -> closeQuietly(k));
+                        throw new IOException("Client stopped reading");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                ByteBuffer chunk = ByteBuffer.wrap(buf, 0, n);
+                buf = new byte[CHUNK];
+                n = 0;
+                c.unsent.addAndGet(chunk.remaining());
+                post(() -> enqueue(k, chunk));
+            }
+        }
+    }
+
+    /** Runs a query into {@code out}, every line tagged with {@code id} when non-null. */
+    private static void render(String command, String id, OutputStream out) throws IOException {
+        if (id == null && VitalsTcpServer.isCompressed(command)) {
+            VitalsTcpServer.queryCompressed(command, out);
+            return;
+        }
+        BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        try {
+            VitalsTcpServer.query(command, id == null ? bw : new VitalsTcpServer.TaggedWriter(bw, id));
+        } finally {
+            bw.flush();
+        }
+    }
+
+    private static byte[] bytes(String id, String reply) {
+        return ((id == null ? reply : id + " " + reply) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(ByteBuffer b, byte v) {
+        byte[] a = b.array();
+        for (int i = 0, n = b.position(); i < n; i++) if (a[i] == v) return i;
+        return -1;
+    }
+
+    private static void unsubscribe(Conn c) {
+        VitalsTcpServer.SUBSCRIBERS.unsubscribe(c.subscription);
+        c.subscription = null;
+    }
+
+    private static void release(Conn c) {
+        if (!c.admitted) return;
+        c.admitted = false;
+        VitalsTcpServer.ADMISSION.release();
+    }
+
+    private static void closeQuietly(SelectionKey k) {
+        k.cancel();
+        if (k.attachment() instanceof Conn c) {
+            if (c.subscription != null) unsubscribe(c);
+            release(c);
+            c.wakeProducers();                                         // they see the key invalid and stop
+        }
+        try { k.channel().close(); } catch (IOException ignored) {}
+    }
+}
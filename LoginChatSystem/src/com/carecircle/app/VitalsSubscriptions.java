@@ -0,0 +1,179 @@
+package com.carecircle.app;
+
+import com.carecircle.core.Dispatchers;
+import com.carecircle.core.VitalsLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Live push of newly saved vitals rows to {@code SUBSCRIBE <patientId|ALL> [providerId]} connections.
+ * Subscribers are indexed by patient id (plus one set for ALL), so a publish only visits the
+ * subscribers a row can reach. Each row is encoded once and the same bytes go to every subscriber.
+ * With a providerId, rows are limited to that provider's patients as
+ * {@link Dispatchers.ProviderAccessControl} sees them at the time of the row.
+ * {@link Subscriber#push} never blocks the publishing (writer) thread; a subscriber that falls
+ * more than {@link #MAX_BACKLOG} rows behind is disconnected.
+ */
+final class VitalsSubscriptions {
+    static final String USAGE = "ERROR: usage SUBSCRIBE <patientId|ALL> [providerId]";
+    static final String OK = "SUBSCRIBED";
+    /** Rows queued for one subscriber before it is dropped. */
+    static final int MAX_BACKLOG = 4096;
+
+    /** Receives encoded rows (each ends with a line separator); must not block. */
+    interface Subscriber { void push(List<byte[]> rows); }
+
+    static final class Subscription {
+        final String patientKey;       // null = ALL
+        final String providerId;       // null = unscoped
+        final Subscriber sink;
+        Subscription(String patientKey, String providerId, Subscriber sink) {
+            this.patientKey = patientKey; this.providerId = providerId; this.sink = sink;
+        }
+    }
+
+    private final Supplier<Dispatchers.ProviderAccessControl> access;
+    private final Map<String, Set<Subscription>> byPatient = new ConcurrentHashMap<>();
+    private final Set<Subscription> all = ConcurrentHashMap.newKeySet();
+
+    /** @param access looked up only once a scoped subscription needs it */
+    VitalsSubscriptions(Supplier<Dispatchers.ProviderAccessControl> access) { this.access = access; }
+
+    static boolean isSubscribe(String line) {
+        String t = line.trim();
+        return t.regionMatches(true, 0, "SUBSCRIBE", 0, 9) && (t.length() == 9 || Character.isWhitespace(t.charAt(9)));
+    }
+
+    /**
+     * Registers {@code sink} for a {@code SUBSCRIBE} line. The sink first gets
+     * {@code SUBSCRIBED <patientId|ALL>} and the CSV header, then the rows in that header's layout.
+     * @throws IllegalArgumentException with the error reply when the line is malformed or out of scope
+     */
+    Subscription subscribe(String line, Subscriber sink) {
+        String[] p = line.trim().substring(9).trim().split("\\s+");
+        if (p[0].isEmpty() || p.length > 2) throw new IllegalArgumentException(USAGE);
+        String patient = "ALL".equalsIgnoreCase(p[0]) ? null : p[0];
+        String provider = p.length > 1 ? p[1] : null;
+        if (patient != null && provider != null && !access.get().canAccess(provider, patient))
+            throw new IllegalArgumentException("ERROR: provider " + provider + " has no access to " + patient);
+        Subscription s = new Subscription(patient == null ? null : key(patient), provider, sink);
+        sink.push(List.of(encode(OK + " " + (patient == null ? "ALL" : patient)),
+                encode(Dispatchers.csvJoin(VitalsLog.CSV_HEADER))));
+        if (s.patientKey == null) all.add(s);
+        else byPatient.computeIfAbsent(s.patientKey, k -> ConcurrentHashMap.newKeySet()).add(s);
+        return s;
+    }
+
+    void unsubscribe(Subscription s) {
+        if (s == null) return;
+        if (s.patientKey == null) { all.remove(s); return; }
+        byPatient.computeIfPresent(s.patientKey, (k, set) -> { set.remove(s); return set.isEmpty() ? null : set; });
+    }
+
+    int size() {
+        int n = all.size();
+        for (Set<Subscription> s : byPatient.values()) n += s.size();
+        return n;
+    }
+
+    /** Hands saved CSV lines to their subscribers, one {@link Subscriber#push} per subscriber. */
+    void publish(List<String> csvLines) {
+        if (all.isEmpty() && byPatient.isEmpty()) return;
+        Map<Subscription, List<byte[]>> out = new HashMap<>();
+        for (String line : csvLines) {
+            List<String> fields = Dispatchers.csvSplit(line);
+            String pid = fields.get(0).trim();
+            Set<Subscription> one = byPatient.get(key(pid));
+            if (one == null && all.isEmpty()) continue;
+            byte[] row = encode(VitalsLog.toHeaderLayout(fields));       // the layout of the header sent
+            if (one != null) for (Subscription s : one) route(out, s, pid, row);
+            for (Subscription s : all) route(out, s, pid, row);
+        }
+        out.forEach((s, rows) -> s.sink.push(rows));
+    }
+
+    private void route(Map<Subscription, List<byte[]>> out, Subscription s, String pid, byte[] row) {
+        if (s.providerId != null && !access.get().canAccess(s.providerId, pid)) return;
+        out.computeIfAbsent(s, k -> new ArrayList<>()).add(row);
+    }
+
+    private static byte[] encode(String line) { return (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8); }
+
+    private static String key(String patientId) { return patientId.trim().toLowerCase(Locale.ROOT); }
+
+    /**
+     * Subscriber over a blocking stream: rows queue here and a task on {@code drainer} writes them
+     * out, so one stalled viewer holds at most one drainer thread and never the publisher.
+     */
+    static final class StreamSubscriber implements Subscriber {
+        private final OutputStream out;
+        private final Closeable onOverflow;
+        private final Executor drainer;
+        private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+        private boolean draining, dead;
+
+        StreamSubscriber(OutputStream out, Closeable onOverflow, Executor drainer) {
+            this.out = out; this.onOverflow = onOverflow; this.drainer = drainer;
+        }
+
+        @Override public void push(List<byte[]> rows) {
+            boolean overflow;
+            synchronized (this) {
+                if (dead) return;
+                overflow = queue.size() + rows.size() > MAX_BACKLOG;
+                if (overflow) {
+                    dead = true;
+                    queue.clear();
+                } else {
+                    queue.addAll(rows);
+                    if (draining) return;
+                    draining = true;
+                }
+            }
+            if (overflow) { try { onOverflow.close(); } catch (IOException ignored) {} return; }
+            drainer.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                List<byte[]> batch;
+                synchronized (this) {
+                    if (queue.isEmpty() || dead) { draining = false; notifyAll(); return; }
+                    batch = new ArrayList<>(queue);
+                    queue.clear();
+                }
+                try {
+                    for (byte[] b : batch) out.write(b);
+                    out.flush();
+                } catch (IOException e) {
+                    synchronized (this) { dead = true; queue.clear(); }
+                }
+            }
+        }
+
+        /**
+         * Stops delivery and waits up to {@code millis} for a running drain.
+         * @return true when no drain is writing any more, so the caller may use the stream
+         */
+        synchronized boolean stop(long millis) throws InterruptedException {
+            dead = true;
+            queue.clear();
+            long until = System.currentTimeMillis() + millis;
+            for (long left = millis; draining && left > 0; left = until - System.currentTimeMillis()) wait(left);
+            return !draining;
+        }
+    }
+}
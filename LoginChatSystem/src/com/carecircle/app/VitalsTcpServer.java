@@ -3,76 +3,657 @@
 // ============================================================================
 package com.carecircle.app;
 
+import com.carecircle.core.AdmissionControl;
+import com.carecircle.core.ChunkedDeflate;
+import com.carecircle.core.ConnectionExecutors;
+import com.carecircle.core.CsvScanner;
+import com.carecircle.core.Dispatchers;
+import com.carecircle.core.MonthlyVitals;
+import com.carecircle.core.VitalsCompactor;
+import com.carecircle.core.VitalsFrames;
+import com.carecircle.core.VitalsIngestWriter;
+import com.carecircle.core.VitalsLog;
+import com.carecircle.core.VitalsRecord;
+import com.carecircle.core.VitalsRollups;
+import com.carecircle.core.VitalsSegments;
+
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
 
-/** TCP server saving vitals into vitals.csv (now includes patientName). */
+/**
+ * TCP server saving vitals into vitals.csv (now includes patientName).
+ * A connection carries one command by default; see {@link #handle} for the other modes it can open in.
+ */
 public final class VitalsTcpServer {
     private static final int PORT = 1234;
     private static final File CSV = new File("vitals.csv");
+    private static final File LOG = new File("vitals.bin");
+    private static final File SEGMENTS_DIR = new File("vitals.segments");
+    private static final String FORMAT = System.getProperty("carecircle.vitals.format", "csv").trim().toLowerCase();
+    private static final String IO = System.getProperty("carecircle.vitals.io", "threads").trim().toLowerCase();
+    private static final boolean BINARY = "binary".equals(FORMAT);
+    private static final boolean SEGMENTED = "segmented".equals(FORMAT);
+    private static final VitalsSegments SEGMENTS = new VitalsSegments(SEGMENTS_DIR.toPath());
+    private static final VitalsRollups ROLLUPS = new VitalsRollups();
+    private static VitalsIngestWriter writer;
+    static final VitalsSubscriptions SUBSCRIBERS = new VitalsSubscriptions(Dispatchers.Factory::accessControl);
+    // writes queued rows to blocking SUBSCRIBE connections
+    private static final ExecutorService PUSH = ConnectionExecutors.perConnection(IO, "vitals-push");
+    // writes pipelined submission replies: never on the ingest writer thread, which a client that
+    // stops reading would otherwise hold up for everyone
+    private static final ExecutorService REPLIES = ConnectionExecutors.perConnection(IO, "vitals-reply");
+    static final AdmissionControl ADMISSION = AdmissionControl.fromProperties("carecircle.vitals");
 
+    /**
+     * {@code -Dcarecircle.vitals.io=nio} serves connections from {@code carecircle.vitals.ioThreads}
+     * selector loops ({@link VitalsNioServer}) instead of a thread per connection; {@code virtual} keeps the
+     * blocking handler but runs each connection on a virtual thread (JDK 21+, see {@link ConnectionExecutors}).
+     * Connections and full scans are capped by {@link AdmissionControl} ({@code carecircle.vitals.maxConnections},
+     * {@code .submitReserve}, {@code .maxScans}, {@code .backlog}).
+     */
     public static void main(String[] args) {
-        System.out.println("Vitals server listening on port " + PORT);
+        System.out.println("Vitals server listening on port " + PORT
+                + " (" + ("nio".equals(IO) ? "nio" : ConnectionExecutors.effectiveMode(IO) + " threads") + ")");
         ensureHeader();
-        try (ServerSocket ss = new ServerSocket(PORT)) {
+        loadRollups();
+        try {
+            writer = openWriter();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (SEGMENTED) startCompactor();
+        if ("nio".equals(IO)) {
+            try (VitalsNioServer nio = new VitalsNioServer(PORT, Integer.getInteger("carecircle.vitals.ioThreads", 2))) {
+                nio.run();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        ExecutorService connections = ConnectionExecutors.perConnection(IO, "vitals-conn");
+        try (ServerSocket ss = new ServerSocket(PORT, ADMISSION.backlog())) {
             while (true) {
                 Socket client = ss.accept();
-                new Thread(() -> handle(client)).start();
+                AdmissionControl.Admit admit = ADMISSION.admit();
+                if (admit == AdmissionControl.Admit.REJECT) { refuse(client); continue; }
+                connections.execute(() -> {
+                    try { handle(client, admit == AdmissionControl.Admit.SUBMIT_ONLY); }
+                    finally { ADMISSION.release(); }
+                });
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private static void handle(Socket s) {
+    /** Over every limit: say BUSY on the accepting thread and hang up. */
+    private static void refuse(Socket s) {
+        try (s) {
+            s.getOutputStream().write((ADMISSION.busy() + "\n").getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * One command, reply, close; unless the first line is {@code SESSION} ({@link #session}) or
+     * {@code SUBSCRIBE} ({@link #subscribe}), or the first byte is {@link VitalsFrames#MAGIC} ({@link #framed}).
+     * @param submitOnly admitted from the submission reserve: anything but a submission gets BUSY
+     */
+    private static void handle(Socket s, boolean submitOnly) {
         try (s;
-             BufferedReader br = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             BufferedInputStream in = new BufferedInputStream(s.getInputStream());
+             BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
              BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            in.mark(1);
+            if (in.read() == VitalsFrames.MAGIC) { framed(in, s.getOutputStream(), submitOnly); return; }
+            in.reset();
             String line = br.readLine();
             if (line == null) return;
-            String trimmed = line.trim();
-            if ("QUIT".equalsIgnoreCase(trimmed)) {
-                bw.write("Goodbye"); bw.newLine(); bw.flush(); return;
+            if (submitOnly && !isWrite(line)) {
+                for (String r : busy(line)) { bw.write(r); bw.newLine(); }
+                bw.flush();
+                return;
+            }
+            if (isSessionStart(line)) { session(br, bw); return; }
+            if (VitalsSubscriptions.isSubscribe(line)) { subscribe(s, br, bw, line); return; }
+            if (isCompressed(line)) { queryCompressed(line, s.getOutputStream()); return; }
+            if (isBatch(line)) {
+                try { for (String r : batch(br, line).get()) { bw.write(r); bw.newLine(); } }
+                catch (InterruptedException e) { Thread.currentThread().interrupt(); return; }
+                catch (ExecutionException e) { return; }
+                bw.flush();
+                return;
             }
-            if ("LIST ALL".equalsIgnoreCase(trimmed)) { streamCsv(bw, null); return; }
-            if (trimmed.toUpperCase().startsWith("LIST ")) {
-                String pid = trimmed.substring(5).trim();
-                streamCsv(bw, pid.isEmpty()?null:pid); return;
+            if (isSubmit(line)) {
+                try { bw.write(submit(line).get()); }
+                catch (InterruptedException e) { Thread.currentThread().interrupt(); return; }
+                catch (ExecutionException e) { return; }
+                bw.newLine(); bw.flush();
+            } else {
+                query(line, bw);
             }
-            append(line + "," + Instant.now());
-            bw.write("OK saved to vitals.csv"); bw.newLine(); bw.flush();
         } catch (IOException ignored) {}
     }
 
-    private static synchronized void append(String csvLine) {
-        try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(CSV, true), StandardCharsets.UTF_8))) {
-            bw.write(csvLine); bw.newLine();
+    /**
+     * {@code SUBSCRIBE <patientId|ALL> [providerId]}: {@code SUBSCRIBED}, the CSV header, then each
+     * matching row as it is saved, until the client sends {@code QUIT} or goes away. Other lines are ignored.
+     */
+    private static void subscribe(Socket s, BufferedReader br, BufferedWriter bw, String line) throws IOException {
+        var sink = new VitalsSubscriptions.StreamSubscriber(new BufferedOutputStream(s.getOutputStream()), s, PUSH);
+        VitalsSubscriptions.Subscription sub;
+        try {
+            sub = SUBSCRIBERS.subscribe(line, sink);
+        } catch (IllegalArgumentException e) {
+            bw.write(e.getMessage()); bw.newLine(); bw.flush(); return;
+        }
+        boolean quit = false;
+        try {
+            for (String l; !quit && (l = br.readLine()) != null; ) quit = "QUIT".equalsIgnoreCase(l.trim());
+        } finally {
+            SUBSCRIBERS.unsubscribe(sub);
+        }
+        try {
+            if (sink.stop(2000) && quit) { bw.write("Goodbye"); bw.newLine(); bw.flush(); }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Persistent connection after {@code SESSION}: each line is {@code <id> <command>}. Submissions
+     * (single rows and {@code SUBMIT BATCH}) are not waited for, so several can share one group commit;
+     * their replies are written from {@link #REPLIES} as they complete. Queries run in order on this thread, after the
+     * submissions sent before them. {@code QUIT} (or EOF) closes the session once every pending
+     * submission has been answered.
+     */
+    private static void session(BufferedReader br, BufferedWriter bw) throws IOException {
+        ReentrantLock out = new ReentrantLock();
+        CompletableFuture<?> pending = CompletableFuture.completedFuture(null);
+        writeTagged(out, bw, null, List.of(SESSION_OK));
+        String line;
+        while ((line = br.readLine()) != null) {
+            String id = tagOf(line), cmd = commandOf(line);
+            if (cmd.isBlank()) { writeTagged(out, bw, id, List.of("ERROR: empty command")); continue; }
+            if ("QUIT".equalsIgnoreCase(cmd.trim())) {
+                pending.join();
+                writeTagged(out, bw, id, List.of("Goodbye"));
+                return;
+            }
+            if (isBatch(cmd)) {
+                pending = CompletableFuture.allOf(pending, batch(br, cmd).thenAcceptAsync(reply -> {
+                    try { writeTagged(out, bw, id, reply); } catch (IOException ignored) {}
+                }, REPLIES));
+                continue;
+            }
+            if (isSubmit(cmd)) {
+                pending = CompletableFuture.allOf(pending, submit(cmd).thenAcceptAsync(reply -> {
+                    try { writeTagged(out, bw, id, List.of(reply)); } catch (IOException ignored) {}
+                }, REPLIES));
+                continue;
+            }
+            pending.join();                          // a query sees this session's earlier submissions
+            out.lock();
+            try {
+                BufferedWriter tw = new TaggedWriter(bw, id);
+                query(cmd, tw);
+                tw.flush();
+            } finally {
+                out.unlock();
+            }
+        }
+        pending.join();
+    }
+
+    /**
+     * Binary framed connection ({@link VitalsFrames}), served like a {@code SESSION}: SUBMIT frames
+     * are not waited for and are answered OK/ERROR from {@link #REPLIES} as they commit; a QUERY runs after the
+     * submissions before it and answers LINE frames then END; QUIT answers OK once all is answered.
+     */
+    private static void framed(InputStream raw, OutputStream rawOut, boolean submitOnly) throws IOException {
+        DataInputStream in = new DataInputStream(raw);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(rawOut, 1 << 16));
+        ReentrantLock lock = new ReentrantLock();
+        CompletableFuture<?> pending = CompletableFuture.completedFuture(null);
+        for (VitalsFrames.Frame f; (f = VitalsFrames.read(in)) != null; ) {
+            int id = f.id();
+            switch (f.type()) {
+                case VitalsFrames.SUBMIT -> pending = CompletableFuture.allOf(pending,
+                        (VitalsFrames.isSingleLine(f.text()) ? submit(f.text())
+                                : CompletableFuture.completedFuture("ERROR: " + VitalsFrames.MULTILINE)).thenAcceptAsync(reply ->
+                                writeFrame(lock, out, reply.startsWith("OK") ? VitalsFrames.OK : VitalsFrames.ERROR, id, reply),
+                                REPLIES));
+                case VitalsFrames.QUERY -> {
+                    pending.join();
+                    lock.lock();
+                    try { frameQuery(f.text(), id, submitOnly, out); }
+                    finally { lock.unlock(); }
+                }
+                case VitalsFrames.QUIT -> {
+                    pending.join();
+                    writeFrame(lock, out, VitalsFrames.OK, id, "Goodbye");
+                    return;
+                }
+                default -> writeFrame(lock, out, VitalsFrames.ERROR, id, "ERROR: unexpected frame type " + f.type());
+            }
+        }
+        pending.join();
+    }
+
+    /**
+     * Answers a QUERY frame as LINE frames then END. LIST and AVG are the queries a frame may carry
+     * (GZIP is ignored: frames are already binary).
+     */
+    static void frameQuery(String cmd, int id, boolean submitOnly, DataOutputStream out) throws IOException {
+        BufferedWriter w = new VitalsFrames.LineWriter(out, id);
+        String t = cmd.trim().toUpperCase();
+        if (!t.startsWith("LIST ") && !t.startsWith("AVG ")) { w.write("ERROR: QUERY takes LIST or AVG"); w.newLine(); w.write("END"); w.newLine(); }
+        else if (submitOnly) for (String r : busy(cmd)) { w.write(r); w.newLine(); }
+        else query(cmd, w);
+        w.flush();
+    }
+
+    private static void writeFrame(ReentrantLock lock, DataOutputStream out, byte type, int id, String text) {
+        lock.lock();
+        try {
+            VitalsFrames.write(out, type, id, text);
+            out.flush();
+        } catch (IOException ignored) {
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void writeTagged(ReentrantLock out, BufferedWriter bw, String id, List<String> reply) throws IOException {
+        out.lock();
+        try {
+            for (String r : reply) { bw.write(id == null ? r : id + " " + r); bw.newLine(); }
+            bw.flush();
+        } finally {
+            out.unlock();
+        }
+    }
+
+    /** Reads the rows that follow a {@code SUBMIT BATCH <n>} line and submits them. */
+    private static CompletableFuture<List<String>> batch(BufferedReader br, String cmd) throws IOException {
+        int n = batchSize(cmd);
+        if (n < 0) return CompletableFuture.completedFuture(BATCH_USAGE);
+        List<String> rows = new ArrayList<>(n);
+        for (String r; rows.size() < n && (r = br.readLine()) != null; ) rows.add(r);
+        if (rows.size() < n) return CompletableFuture.completedFuture(batchCutShort(rows.size(), n));
+        return submitBatch(rows);
+    }
+
+    // -------- protocol (shared by the thread-per-connection and NIO front ends) --------
+
+    /** First line that switches a connection to the tagged, persistent protocol; answered with {@link #SESSION_OK}. */
+    static final String SESSION = "SESSION";
+    static final String SESSION_OK = "SESSION OK";
+
+    static boolean isSessionStart(String line) { return SESSION.equalsIgnoreCase(line.trim()); }
+    /** Request id of a session line: everything up to the first space. */
+    static String tagOf(String line) { int sp = line.indexOf(' '); return sp < 0 ? line : line.substring(0, sp); }
+    static String commandOf(String line) { int sp = line.indexOf(' '); return sp < 0 ? "" : line.substring(sp + 1); }
+
+    /** Prefixes every line written through it with {@code "<id> "}; flushing also flushes the target. */
+    static final class TaggedWriter extends BufferedWriter {
+        private final Writer target;
+        private final String prefix;
+        private boolean lineStart = true;
+
+        TaggedWriter(Writer target, String id) {
+            super(target);
+            this.target = target;
+            this.prefix = id + " ";
+        }
+        @Override public void write(String s, int off, int len) throws IOException {
+            if (len > 0 && lineStart) { super.write(prefix, 0, prefix.length()); lineStart = false; }
+            super.write(s, off, len);
+        }
+        @Override public void write(char[] c, int off, int len) throws IOException {
+            if (len > 0 && lineStart) { super.write(prefix, 0, prefix.length()); lineStart = false; }
+            super.write(c, off, len);
+        }
+        @Override public void write(int c) throws IOException {
+            if (lineStart) { super.write(prefix, 0, prefix.length()); lineStart = false; }
+            super.write(c);
+        }
+        @Override public void newLine() throws IOException {
+            if (lineStart) super.write(prefix, 0, prefix.length());
+            lineStart = false;                      // super.newLine() comes back through write(String, ...)
+            super.newLine();
+            lineStart = true;
+        }
+        @Override public void flush() throws IOException { super.flush(); target.flush(); }
+        @Override public void close() throws IOException { flush(); }   // the connection outlives one reply
+    }
+
+    /** A first line the submission reserve may serve: a CSV row or {@code SUBMIT BATCH}. */
+    static boolean isWrite(String line) {
+        return !isSessionStart(line) && (isBatch(line) || isSubmit(line));
+    }
+
+    /** The BUSY reply, followed by END where the command's reply normally ends with one. */
+    static List<String> busy(String line) {
+        String t = line.trim().toUpperCase();
+        return t.startsWith("LIST ") || t.startsWith("AVG ") || isBatch(t) ? List.of(ADMISSION.busy(), "END") : List.of(ADMISSION.busy());
+    }
+
+    /**
+     * Commands that scan a whole store and so count against {@code maxScans}: {@code LIST ALL},
+     * {@code LIST <id>} and {@code LIST SINCE} from 0 or a timestamp. Cursor deltas and AVG are cheap.
+     */
+    static boolean isHeavyScan(String line) {
+        String t = line.trim();
+        if (!t.regionMatches(true, 0, "LIST ", 0, 5)) return false;
+        if (!t.regionMatches(true, 0, "LIST SINCE ", 0, 11)) return true;
+        String cursor = t.substring(11).trim().split("\\s+")[0];
+        return "0".equals(cursor) || cursor.indexOf('T') > 0;
+    }
+
+    /** True when the line is a CSV submission rather than a command. */
+    static boolean isSubmit(String line) {
+        String t = line.trim().toUpperCase();
+        return !(t.equals("QUIT") || t.startsWith("LIST ") || t.startsWith("AVG ") || isBatch(t)
+                || VitalsSubscriptions.isSubscribe(t));
+    }
+
+    /** Most rows one {@code SUBMIT BATCH} may carry. */
+    static final int MAX_BATCH_ROWS = 10_000;
+    static final List<String> BATCH_USAGE = List.of("ERROR: usage SUBMIT BATCH <n>, 0 <= n <= " + MAX_BATCH_ROWS, "END");
+
+    /** {@code SUBMIT BATCH <n>}: the next n lines are CSV rows, committed in one write. */
+    static boolean isBatch(String line) { return line.trim().regionMatches(true, 0, "SUBMIT BATCH", 0, 12); }
+
+    /** The n of a {@code SUBMIT BATCH <n>} line, or -1 when it is missing or out of range. */
+    static int batchSize(String line) {
+        try {
+            int n = Integer.parseInt(line.trim().substring(12).trim());
+            return n >= 0 && n <= MAX_BATCH_ROWS ? n : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static List<String> batchCutShort(int got, int n) {
+        return List.of("ERROR: batch ended after " + got + " of " + n + " rows; nothing saved", "END");
+    }
+
+    static CompletableFuture<List<String>> submitBatch(List<String> rows) { return submitBatch(rows, true); }
+
+    /**
+     * Validates each row, stamps the accepted ones and commits them together with one
+     * {@link VitalsIngestWriter#submitAll}. Only waits for room in the ingest queue, and only with {@code wait}.
+     * @return one {@code ROW <i> OK|REJECTED: <why>} line per row, a {@code BATCH} summary, then END;
+     *         BUSY and END when the queue was full and {@code wait} is false
+     */
+    static CompletableFuture<List<String>> submitBatch(List<String> rows, boolean wait) {
+        String now = Instant.now().toString();
+        String[] why = new String[rows.size()];
+        List<String> accepted = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            why[i] = VitalsRecord.validateSubmission(Dispatchers.csvSplit(rows.get(i)));
+            if (why[i] == null) accepted.add(rows.get(i) + "," + now);
+        }
+        return (wait ? writer.submitAll(accepted) : writer.offerAll(accepted)).handle((ok, err) -> {
+            String failure = null;
+            if (err != null) {
+                Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+                if (cause instanceof RejectedExecutionException) return List.of(ADMISSION.busy(), "END");
+                failure = cause.getMessage();
+            } else {
+                for (String line : accepted) ROLLUPS.add(VitalsRecord.fromCsv(Dispatchers.csvSplit(line)));
+                SUBSCRIBERS.publish(accepted);
+            }
+            List<String> reply = new ArrayList<>(rows.size() + 2);
+            for (int i = 0; i < why.length; i++) {
+                reply.add("ROW " + (i + 1) + (why[i] != null ? " REJECTED: " + why[i] : failure == null ? " OK" : " NOT SAVED"));
+            }
+            reply.add(failure == null
+                    ? "BATCH accepted=" + accepted.size() + " rejected=" + (rows.size() - accepted.size())
+                    : "ERROR: not saved: " + failure);
+            reply.add("END");
+            return reply;
+        });
+    }
+
+    /**
+     * Answers {@code QUIT}, {@code LIST ALL}, {@code LIST <id>}, {@code LIST SINCE <cursor|timestamp> [id]}
+     * and {@code AVG <id> <yyyy-MM>} into {@code bw}. A {@code GZIP} suffix is ignored here: only a
+     * one-shot connection can switch to binary ({@link #queryCompressed}), session replies stay text.
+     */
+    static void query(String line, BufferedWriter bw) throws IOException {
+        String trimmed = (isCompressed(line) ? uncompressed(line) : line).trim();
+        if ("QUIT".equalsIgnoreCase(trimmed)) {
+            bw.write("Goodbye"); bw.newLine(); bw.flush(); return;
+        }
+        boolean heavy = isHeavyScan(trimmed);
+        if (heavy && !ADMISSION.tryScan()) {
+            for (String r : busy(trimmed)) { bw.write(r); bw.newLine(); }
+            bw.flush();
+            return;
+        }
+        try {
+            answer(trimmed, bw);
+        } finally {
+            if (heavy) ADMISSION.endScan();
+        }
+    }
+
+    private static void answer(String trimmed, BufferedWriter bw) throws IOException {
+        if ("LIST ALL".equalsIgnoreCase(trimmed)) { streamCsv(bw, null); return; }
+        if (trimmed.regionMatches(true, 0, "LIST SINCE ", 0, 11)) { streamSince(bw, trimmed.substring(11).trim()); return; }
+        if (trimmed.toUpperCase().startsWith("AVG ")) { writeMonthly(bw, trimmed.substring(4).trim()); return; }
+        if (VitalsSubscriptions.isSubscribe(trimmed)) {
+            bw.write("ERROR: SUBSCRIBE must be the first line of its own connection"); bw.newLine(); bw.flush(); return;
+        }
+        String pid = trimmed.length() > 5 ? trimmed.substring(5).trim() : "";
+        streamCsv(bw, pid.isEmpty() ? null : pid);
+    }
+
+    /** {@code LIST ... GZIP}: the same reply, sent deflated. */
+    static boolean isCompressed(String line) {
+        String t = line.trim().toUpperCase();
+        return t.startsWith("LIST ") && t.endsWith(" GZIP");
+    }
+
+    private static String uncompressed(String line) {
+        String t = line.trim();
+        return t.substring(0, t.length() - 5);
+    }
+
+    /** Writes the {@link ChunkedDeflate#MARKER} line, then the reply to the LIST command as deflate frames. */
+    static void queryCompressed(String line, OutputStream out) throws IOException {
+        out.write((ChunkedDeflate.MARKER + "\n").getBytes(StandardCharsets.US_ASCII));
+        try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(ChunkedDeflate.output(out), StandardCharsets.UTF_8), 1 << 16)) {
+            query(uncompressed(line), bw);
+        }
+        out.flush();
+    }
+
+    static CompletableFuture<String> submit(String line) { return submit(line, true); }
+
+    /**
+     * Stamps and queues a submission. Only waits for room in the ingest queue, and only with
+     * {@code wait}; the selector thread passes false and gets BUSY when the queue is full.
+     * @return the reply line, completed once the group-commit writer has made the row durable
+     */
+    static CompletableFuture<String> submit(String line, boolean wait) {
+        String csvLine = line + "," + Instant.now();
+        List<String> lines = List.of(csvLine);
+        return (wait ? writer.submitAll(lines) : writer.offerAll(lines)).handle((ok, err) -> {
+            if (err != null) {
+                Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+                if (cause instanceof RejectedExecutionException) return ADMISSION.busy();
+                return "ERROR: not saved: " + cause.getMessage();
+            }
+            ROLLUPS.add(VitalsRecord.fromCsv(Dispatchers.csvSplit(csvLine)));
+            SUBSCRIBERS.publish(List.of(csvLine));
+            return "OK saved to " + (BINARY ? LOG : SEGMENTED ? SEGMENTS_DIR : CSV).getName();
+        });
+    }
+
+    /**
+     * Submissions go through a group-commit {@link VitalsIngestWriter} into vitals.csv; with
+     * {@code -Dcarecircle.vitals.format=binary} into the vitals.bin {@link VitalsLog}, with {@code segmented}
+     * into size-capped {@link VitalsSegments} under vitals.segments/. {@code -Dcarecircle.vitals.durability}
+     * ({@code none}, {@code periodic} or {@code batch}) sets when "OK saved" is sent.
+     */
+    private static VitalsIngestWriter openWriter() throws IOException {
+        var durability = VitalsIngestWriter.Durability.parse(System.getProperty("carecircle.vitals.durability", "none"));
+        int queue = Integer.getInteger("carecircle.vitals.queue", 1024);
+        long forceMillis = Long.getLong("carecircle.vitals.forceMillis", 200L);
+        if (BINARY) {
+            VitalsLog.Appender log = VitalsLog.Appender.open(LOG.toPath());
+            return new VitalsIngestWriter(log, line -> log.encode(VitalsRecord.fromCsv(Dispatchers.csvSplit(line))),
+                    durability, queue, forceMillis);
+        }
+        if (SEGMENTED) {
+            VitalsSegments.Writer seg = SEGMENTS.openWriter(
+                    Long.getLong("carecircle.vitals.segmentBytes", VitalsSegments.DEFAULT_SEGMENT_BYTES));
+            return new VitalsIngestWriter(seg, seg::encode, durability, queue, forceMillis);
+        }
+        return new VitalsIngestWriter(VitalsIngestWriter.fileSink(CSV.toPath()), VitalsIngestWriter::csvLine,
+                durability, queue, forceMillis);
+    }
+
+    /**
+     * Compacts sealed segments every {@code carecircle.vitals.compactMinutes}; {@code carecircle.vitals.hourlyAfterDays}
+     * and {@code dailyAfterDays} turn on downsampling of old ones.
+     */
+    private static void startCompactor() {
+        Long hourly = Long.getLong("carecircle.vitals.hourlyAfterDays");
+        Long daily = Long.getLong("carecircle.vitals.dailyAfterDays");
+        new VitalsCompactor(SEGMENTS, hourly == null ? null : Duration.ofDays(hourly), daily == null ? null : Duration.ofDays(daily))
+                .start(Duration.ofMinutes(Long.getLong("carecircle.vitals.compactMinutes", 10L)).toMillis());
+    }
+
+    /** Seeds the rollups from what is already on disk; {@link #submit} keeps them current. */
+    private static void loadRollups() {
+        try {
+            if (BINARY) new VitalsLog.Cursor(LOG.toPath()).poll(pid -> true, ROLLUPS::add);
+            else if (SEGMENTED) SEGMENTS.scan(null, null, null, row -> {
+                VitalsRecord v = VitalsRecord.fromCsv(row.fields());
+                ROLLUPS.add(v, VitalsSegments.tally(row, v));
+            });
+            else CsvScanner.scan(CSV.toPath(), 0, row -> {
+                if (!row.isHeader() && row.fieldCount() > 0) ROLLUPS.add(VitalsRecord.fromCsv(row.fields()));
+            });
         } catch (IOException ignored) {}
     }
 
+    /** {@code AVG <patientId> <yyyy-MM>}: one CSV row per metric, then END. */
+    private static void writeMonthly(BufferedWriter bw, String args) throws IOException {
+        String[] p = args.split("\\s+");
+        YearMonth ym = null;
+        try { if (p.length == 2) ym = YearMonth.parse(p[1]); } catch (DateTimeParseException ignored) {}
+        if (ym == null) {
+            bw.write("ERROR: usage AVG <patientId> <yyyy-MM>"); bw.newLine();
+            bw.write("END"); bw.newLine(); bw.flush(); return;
+        }
+        MonthlyVitals m = ROLLUPS.get(p[0], ym);
+        bw.write("metric,count,average,min,max"); bw.newLine();
+        writeStat(bw, "heartRateBpm", m.heartRateBpm());
+        writeStat(bw, "bpSystolic", m.bpSystolic());
+        writeStat(bw, "bpDiastolic", m.bpDiastolic());
+        writeStat(bw, "temperatureC", m.temperatureC());
+        writeStat(bw, "weightKg", m.weightKg());
+        bw.write("END"); bw.newLine(); bw.flush();
+    }
+    private static void writeStat(BufferedWriter bw, String metric, MonthlyVitals.Stat s) throws IOException {
+        bw.write(s.count() == 0 ? metric + ",0,,,"
+                : metric + "," + s.count() + "," + s.average() + "," + s.min() + "," + s.max());
+        bw.newLine();
+    }
+
+    /** {@code LIST ALL} / {@code LIST <id>} as CSV; binary logs are exported, segments that cannot match skipped. */
     private static void streamCsv(BufferedWriter bw, String filterPid) throws IOException {
         ensureHeader();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(CSV), StandardCharsets.UTF_8))) {
-            String header = br.readLine();
-            if (header != null) { bw.write(header); bw.newLine(); }
-            String row;
-            while ((row = br.readLine()) != null) {
-                if (filterPid == null) { bw.write(row); bw.newLine(); }
-                else {
-                    int idx = row.indexOf(',');
-                    String pid = idx < 0 ? row : row.substring(0, idx);
-                    if (filterPid.equalsIgnoreCase(pid.trim())) { bw.write(row); bw.newLine(); }
-                }
+        try {
+            if (BINARY) VitalsLog.exportCsv(LOG.toPath(), filterPid, bw);
+            else if (SEGMENTED) {
+                bw.write(Dispatchers.csvJoin(VitalsLog.CSV_HEADER)); bw.newLine();
+                SEGMENTS.scan(filterPid, null, null, row -> { bw.write(VitalsSegments.clientLine(row)); bw.newLine(); });
             }
+            else CsvScanner.scan(CSV.toPath(), 0, row -> {
+                if (filterPid != null && !row.isHeader() && !row.fieldEqualsIgnoreCase(0, filterPid)) return;
+                bw.write(row.line()); bw.newLine();
+            });
         } catch (IOException ex) {
             bw.write("ERROR: " + ex.getMessage()); bw.newLine();
         }
         bw.write("END"); bw.newLine(); bw.flush();
     }
 
+    static final String SINCE_USAGE = "ERROR: usage LIST SINCE <cursor|timestamp> [patientId]";
+
+    /**
+     * {@code LIST SINCE <cursor|timestamp> [patientId]}: the 10-column header, the rows appended after
+     * the cursor (or submitted after the ISO-8601 timestamp) in its layout, {@code CURSOR <next>}, then END. Cursors are
+     * byte offsets for csv and binary and {@code <segment>:<tier>:<offset>:<row>} for segmented; pass
+     * {@code 0} for everything so far. A segmented cursor into a segment downsampled since is answered
+     * {@code ERROR: Cursor expired ...}: the client starts again from 0.
+     */
+    private static void streamSince(BufferedWriter bw, String args) throws IOException {
+        String[] p = args.split("\\s+", 2);
+        String filterPid = p.length > 1 && !p[1].isBlank() ? p[1].trim() : null;
+        Instant after = null;
+        long from = 0;
+        String token = null;
+        try {
+            if (p[0].indexOf('T') > 0) after = Instant.parse(p[0]);
+            else if (SEGMENTED) token = "0".equals(p[0]) ? null : p[0];
+            else from = Long.parseLong(p[0]);
+            if (from < 0) throw new NumberFormatException(p[0]);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            bw.write(SINCE_USAGE); bw.newLine();
+            bw.write("END"); bw.newLine(); bw.flush(); return;
+        }
+        ensureHeader();
+        Instant since = after;
+        try {
+            String next;
+            if (BINARY) next = Long.toString(VitalsLog.exportCsv(LOG.toPath(), from, filterPid, after, bw));
+            else {
+                bw.write(Dispatchers.csvJoin(VitalsLog.CSV_HEADER)); bw.newLine();
+                CsvScanner.RowHandler rows = row -> {
+                    if (row.isHeader() || row.fieldCount() == 0) return;
+                    if (filterPid != null && !row.fieldEqualsIgnoreCase(0, filterPid)) return;
+                    if (since != null && !submittedAfter(row, since)) return;
+                    bw.write(VitalsSegments.clientLine(row)); bw.newLine();
+                };
+                if (SEGMENTED) next = SEGMENTS.scanSince(token, filterPid, after, rows);
+                else next = Long.toString(CsvScanner.tail(CSV.toPath(), from > CSV.length() ? 0 : from, rows));
+            }
+            bw.write("CURSOR " + next); bw.newLine();
+        } catch (IOException | IllegalArgumentException ex) {
+            bw.write("ERROR: " + ex.getMessage()); bw.newLine();
+        }
+        bw.write("END"); bw.newLine(); bw.flush();
+    }
+
+    private static boolean submittedAfter(CsvScanner row, Instant after) {
+        try {
+            return Instant.parse(row.field(row.fieldCount() >= 10 ? 9 : 8).trim()).isAfter(after);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
     private static void ensureHeader() {
         if (CSV.exists() && CSV.length() > 0) return;
         try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(CSV, true), StandardCharsets.UTF_8))) {
@@ -0,0 +1,66 @@
+package com.carecircle.core;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection and scan limits for the TCP servers. Up to {@code maxConnections} connections are
+ * admitted normally; the next {@code submitReserve} are admitted for submissions only, so a flood
+ * of readers cannot lock writers out; beyond that a connection is turned away. At most
+ * {@code maxScans} heavy reads (full-file {@code LIST}s) run at once. Whatever is refused gets
+ * {@link #busy()}.
+ * <p>
+ * {@link #fromProperties} reads {@code <prefix>.maxConnections} (512), {@code .submitReserve} (16),
+ * {@code .maxScans} (4), {@code .backlog} (50) and {@code .retryAfterMillis} (1000).
+ */
+public final class AdmissionControl {
+    public enum Admit { FULL, SUBMIT_ONLY, REJECT }
+
+    private final int maxConnections;
+    private final int submitReserve;
+    private final int backlog;
+    private final long retryAfterMillis;
+    private final Semaphore scans;
+    private final AtomicInteger connections = new AtomicInteger();
+
+    public AdmissionControl(int maxConnections, int submitReserve, int maxScans, int backlog, long retryAfterMillis) {
+        this.maxConnections = Math.max(1, maxConnections);
+        this.submitReserve = Math.max(0, submitReserve);
+        this.backlog = Math.max(1, backlog);
+        this.retryAfterMillis = Math.max(0, retryAfterMillis);
+        this.scans = new Semaphore(Math.max(1, maxScans));
+    }
+
+    public static AdmissionControl fromProperties(String prefix) {
+        return new AdmissionControl(
+                Integer.getInteger(prefix + ".maxConnections", 512),
+                Integer.getInteger(prefix + ".submitReserve", 16),
+                Integer.getInteger(prefix + ".maxScans", 4),
+                Integer.getInteger(prefix + ".backlog", 50),
+                Long.getLong(prefix + ".retryAfterMillis", 1000L));
+    }
+
+    /** Counts a new connection unless it is rejected; pair every non-REJECT with {@link #release()}. */
+    public Admit admit() {
+        int n = connections.incrementAndGet();
+        if (n <= maxConnections) return Admit.FULL;
+        if (n <= maxConnections + submitReserve) return Admit.SUBMIT_ONLY;
+        connections.decrementAndGet();
+        return Admit.REJECT;
+    }
+
+    public void release() { connections.decrementAndGet(); }
+
+    /** Claims a heavy-scan slot without waiting; pair a true with {@link #endScan()}. */
+    public boolean tryScan() { return scans.tryAcquire(); }
+
+    public void endScan() { scans.release(); }
+
+    /** Accept queue length for the listening socket. */
+    public int backlog() { return backlog; }
+
+    public int connections() { return connections.get(); }
+
+    /** The refusal line: {@code BUSY retry-after=<millis>}. */
+    public String busy() { return "BUSY retry-after=" + retryAfterMillis; }
+}
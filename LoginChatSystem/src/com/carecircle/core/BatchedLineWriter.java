@@ -0,0 +1,143 @@
+package com.carecircle.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends lines to files on one background thread. Callers only queue; the writer keeps one open
+ * channel per file and writes everything queued for a file with a single call. A line waits at most
+ * {@code flushMillis} (0: written as soon as the writer gets to it, which still batches whatever
+ * queued up meanwhile), or until {@code maxLines} are pending. Lines are encoded like
+ * {@code FileWriter} would (default charset, platform line separator), so files written either way
+ * read the same.
+ */
+public final class BatchedLineWriter implements Closeable {
+    private record Request(Path file, List<String> lines, boolean close, CompletableFuture<Void> done) {}
+
+    private static final Request STOP = new Request(null, List.of(), true, new CompletableFuture<>());
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final int maxLines;
+    private final long flushMillis;
+    private final Charset charset = Charset.defaultCharset();
+    private final Map<Path, FileChannel> open = new HashMap<>();   // writer thread only
+    private final Thread writer;
+    private boolean closed;                                          // guarded by this
+
+    /** @param name the writer thread's name (a daemon thread) */
+    public BatchedLineWriter(String name, int maxLines, long flushMillis) {
+        this.maxLines = Math.max(1, maxLines);
+        this.flushMillis = Math.max(0, flushMillis);
+        writer = new Thread(this::run, name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Queues {@code line} for {@code file}; completes once written, exceptionally if that failed. */
+    public CompletableFuture<Void> append(Path file, String line) {
+        return append(file, List.of(line));
+    }
+
+    /** Queues {@code lines}, which land in {@code file} together and in order. */
+    public CompletableFuture<Void> append(Path file, List<String> lines) {
+        return enqueue(new Request(file, List.copyOf(lines), false, new CompletableFuture<>()));
+    }
+
+    /** Writes what is queued for {@code file} and closes its channel; the next append reopens it. */
+    public CompletableFuture<Void> close(Path file) {
+        return enqueue(new Request(file, List.of(), true, new CompletableFuture<>()));
+    }
+
+    /** Writes everything queued so far, closes every file and stops the writer thread. */
+    @Override public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            queue.add(STOP);                                             // nothing is queued after it
+        }
+        try { writer.join(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+
+    private synchronized CompletableFuture<Void> enqueue(Request r) {
+        if (closed) r.done().completeExceptionally(new IOException("Writer closed"));
+        else queue.add(r);
+        return r.done();
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>();
+        boolean stop = false;
+        while (!stop) {
+            try {
+                Request first = queue.take();
+                batch.add(first);
+                int lines = first.lines().size();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushMillis);
+                stop = first == STOP;
+                while (!stop && lines < maxLines) {
+                    Request r = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (r == null) break;
+                    batch.add(r);
+                    lines += r.lines().size();
+                    stop = r == STOP;
+                }
+            } catch (InterruptedException e) {
+                stop = true;
+            }
+            write(batch);
+            batch.clear();
+        }
+        open.values().forEach(BatchedLineWriter::closeQuietly);
+        open.clear();
+    }
+
+    private void write(List<Request> batch) {
+        Map<Path, StringBuilder> text = new LinkedHashMap<>();
+        for (Request r : batch) {
+            if (r == STOP) continue;
+            for (String l : r.lines()) text.computeIfAbsent(r.file(), k -> new StringBuilder()).append(l).append(System.lineSeparator());
+        }
+        Map<Path, IOException> failed = new HashMap<>();
+        text.forEach((file, sb) -> {
+            try {
+                FileChannel ch = open.get(file);
+                if (ch == null) {
+                    ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    open.put(file, ch);
+                }
+                ByteBuffer b = charset.encode(CharBuffer.wrap(sb));
+                while (b.hasRemaining()) ch.write(b);
+            } catch (IOException e) {
+                failed.put(file, e);
+                closeQuietly(open.remove(file));                         // reopened by the next append
+            }
+        });
+        for (Request r : batch) {
+            if (r == STOP) continue;
+            if (r.close()) closeQuietly(open.remove(r.file()));
+            IOException e = failed.get(r.file());
+            if (e == null) r.done().complete(null);
+            else r.done().completeExceptionally(e);
+        }
+    }
+
+    private static void closeQuietly(FileChannel ch) {
+        if (ch == null) return;
+        try { ch.close(); } catch (IOException ignored) {}
+    }
+}
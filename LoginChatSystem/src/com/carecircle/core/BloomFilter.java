@@ -0,0 +1,43 @@
+package com.carecircle.core;
+
+import java.util.Locale;
+
+/** Fixed-size bloom filter over case-insensitive patient ids (no false negatives). */
+final class BloomFilter {
+    static final int DEFAULT_BITS = 1 << 14;   // 2 KiB; ~1% false positives at 1,000 patients with k=4
+    static final int DEFAULT_HASHES = 4;
+
+    private final long[] words;
+    private final int hashes;
+
+    BloomFilter() { this(new long[DEFAULT_BITS / 64], DEFAULT_HASHES); }
+    BloomFilter(long[] words, int hashes) { this.words = words; this.hashes = hashes; }
+
+    void add(String patientId) {
+        int h1 = hash1(patientId), h2 = hash2(h1);
+        long bits = (long) words.length * 64;
+        for (int i = 0; i < hashes; i++) {
+            long b = Math.floorMod(h1 + (long) i * h2, bits);
+            words[(int) (b >>> 6)] |= 1L << (b & 63);
+        }
+    }
+
+    boolean mightContain(String patientId) {
+        int h1 = hash1(patientId), h2 = hash2(h1);
+        long bits = (long) words.length * 64;
+        for (int i = 0; i < hashes; i++) {
+            long b = Math.floorMod(h1 + (long) i * h2, bits);
+            if ((words[(int) (b >>> 6)] & (1L << (b & 63))) == 0) return false;
+        }
+        return true;
+    }
+
+    long[] words() { return words; }
+    int hashes() { return hashes; }
+
+    private static int hash1(String s) { return s.trim().toLowerCase(Locale.ROOT).hashCode(); }
+    private static int hash2(int h) {
+        h ^= h >>> 16; h *= 0x85ebca6b; h ^= h >>> 13; h *= 0xc2b2ae35; h ^= h >>> 16;
+        return h | 1;
+    }
+}
@@ -0,0 +1,307 @@
+package com.carecircle.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Server-side chat history. Every group's messages get ids 0, 1, 2, ... The last {@code ringSize}
+ * stay in memory; all of them go to {@code <dir>/<group>.log} (one {@code <instant>\t<text>} line
+ * each) and {@code <group>.idx} (the log offset just past each message, 8 bytes per id), so a page
+ * of older messages is two positional reads, never a scan of the log. On open a log is cut back
+ * to its last indexed message, which drops a message half written by a crash.
+ * <p>
+ * A group's lock only covers handing out ids and the ring; {@link #append} and {@link #recent} run a
+ * caller's action under it, so a joiner's replay and the recipients of each message line up exactly.
+ * The files are written behind it by one background thread, which takes whatever has queued up for
+ * a group as a single write to each file. A group whose files fail keeps its history in memory only.
+ * <p>
+ * A group reported {@link #idle} is dropped from memory, files closed, once all of it is written;
+ * its next use reopens it from the files. Open groups are therefore bounded by the active ones, not
+ * by every name ever joined.
+ */
+public final class ChatHistory implements Closeable {
+    public record Entry(long id, Instant at, String text) {}
+
+    private record Pending(GroupLog group, Entry entry) {}
+
+    private static final Pending STOP = new Pending(null, null);
+    private static final long CATCH_UP_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final Path dir;
+    private final int ringSize;
+    private final Map<String, GroupLog> groups = new ConcurrentHashMap<>();
+    private final BlockingQueue<Pending> unwritten = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    public ChatHistory(Path dir, int ringSize) {
+        this.dir = dir;
+        this.ringSize = Math.max(1, ringSize);
+        writer = new Thread(this::writeLoop, "chat-history-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records {@code text} (line breaks become spaces) and, under the group lock, calls
+     * {@code whileLocked}; returns what it returns. The message reaches the files shortly after.
+     */
+    public <T> T append(String group, String text, Supplier<T> whileLocked) {
+        GroupLog g = locked(group);
+        try {
+            g.idle = false;
+            Entry e = new Entry(g.next, Instant.now(), text.replaceAll("\\r\\n|\\r|\\n", " "));
+            g.ring[(int) (e.id() % ringSize)] = e;
+            g.next++;
+            unwritten.add(new Pending(g, e));                          // in id order per group
+            return whileLocked.get();
+        } finally {
+            g.lock.unlock();
+        }
+    }
+
+    /** The last {@code n} messages, oldest first, read under the group lock after running {@code whileLocked}. */
+    public List<Entry> recent(String group, int n, Runnable whileLocked) {
+        GroupLog g = locked(group);
+        try {
+            g.idle = false;
+            whileLocked.run();
+            return g.fromRing(Math.max(g.next - Math.min(n, ringSize), g.ringFirst()), g.next);
+        } finally {
+            g.lock.unlock();
+        }
+    }
+
+    /**
+     * Up to {@code n} messages with ids below {@code beforeId}, oldest first. A page reaching past the
+     * ring first waits (briefly) for the writer to put what has left the ring on disk.
+     */
+    public List<Entry> before(String group, long beforeId, int n) {
+        while (true) {
+            GroupLog g = locked(group);
+            long from, to, onDisk;
+            try {
+                to = Math.min(Math.max(0, beforeId), g.next);
+                from = Math.max(0, to - Math.max(0, n));
+                if (from >= g.ringFirst()) return g.fromRing(from, to);
+                onDisk = g.awaitPersisted(Math.min(to, g.ringFirst()));
+            } finally {
+                g.lock.unlock();
+            }
+            // older than the ring: the files only grow, so they are read outside the lock
+            List<Entry> out = new ArrayList<>();
+            long diskTo = Math.min(to, onDisk);
+            try {
+                out.addAll(g.read(from, diskTo));
+            } catch (IOException e) {
+                if (g.dropped) continue;                                 // closed under us: read it reopened
+                diskTo = from;
+            }
+            if (diskTo < to) {
+                g.lock.lock();
+                try { out.addAll(g.fromRing(Math.max(diskTo, g.ringFirst()), to)); }
+                finally { g.lock.unlock(); }
+            }
+            return out;
+        }
+    }
+
+    /**
+     * {@code group} has no members left: it is dropped from memory and its files closed as soon as
+     * everything appended to it is on disk. Using it again before then keeps it.
+     */
+    public void idle(String group) {
+        GroupLog g = groups.get(group);
+        if (g == null) return;
+        g.lock.lock();
+        try {
+            g.idle = true;
+            g.dropIfWritten();
+        } finally {
+            g.lock.unlock();
+        }
+    }
+
+    /** Writes what is still queued, then closes every group's files. */
+    @Override public void close() {
+        unwritten.add(STOP);
+        try { writer.join(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        for (GroupLog g : groups.values()) g.closeFiles();
+    }
+
+    /** The group's current log, locked; one dropped meanwhile is replaced by a fresh open. */
+    private GroupLog locked(String group) {
+        while (true) {
+            GroupLog g = groups.computeIfAbsent(group, k -> new GroupLog(k));
+            g.lock.lock();
+            if (!g.dropped) return g;
+            g.lock.unlock();
+        }
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(unwritten.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            unwritten.drainTo(batch);
+            Map<GroupLog, List<Entry>> byGroup = new LinkedHashMap<>();
+            for (Pending p : batch) {
+                if (p == STOP) { stop = true; continue; }
+                byGroup.computeIfAbsent(p.group(), k -> new ArrayList<>()).add(p.entry());
+            }
+            byGroup.forEach(GroupLog::write);
+            batch.clear();
+        }
+    }
+
+    private final class GroupLog {
+        final String name;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition written = lock.newCondition();
+        final Entry[] ring = new Entry[ringSize];   // guarded by lock
+        long next;                                 // id of the next message; guarded by lock
+        volatile long persisted;                   // ids below this are in the files
+        volatile FileChannel log, idx;             // null once the files failed
+        long logEnd;                               // writer thread only
+        boolean idle;                              // no members; guarded by lock
+        volatile boolean dropped;                  // out of the map, files closed
+
+        GroupLog(String name) {
+            this.name = name;
+            String file = URLEncoder.encode(name, StandardCharsets.UTF_8);
+            try {
+                Files.createDirectories(dir);
+                log = FileChannel.open(dir.resolve(file + ".log"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                idx = FileChannel.open(dir.resolve(file + ".idx"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                long n = idx.size() / 8;
+                idx.truncate(n * 8);
+                logEnd = n == 0 ? 0 : offset(n - 1);
+                log.truncate(logEnd);
+                next = persisted = n;
+                for (Entry e : read(Math.max(0, n - ringSize), n)) ring[(int) (e.id() % ringSize)] = e;
+            } catch (IOException e) {
+                closeFiles();
+                next = persisted = 0;
+            }
+        }
+
+        long ringFirst() { return Math.max(0, next - ringSize); }
+
+        /** Under {@link #lock}: drops this group once the files hold all of it (or failed: then it is gone). */
+        void dropIfWritten() {
+            if (dropped || (log != null && persisted < next)) return;
+            dropped = true;
+            groups.remove(name, this);
+            closeFiles();
+        }
+
+        /** Under {@link #lock}: waits until ids below {@code id} are on disk, the files failed, or a timeout. */
+        long awaitPersisted(long id) {
+            long left = CATCH_UP_NANOS;
+            try {
+                while (persisted < id && log != null && left > 0) left = written.awaitNanos(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return persisted;
+        }
+
+        /** Writer thread: appends consecutive entries with one write to each file. */
+        void write(List<Entry> entries) {
+            FileChannel log = this.log, idx = this.idx;
+            if (log == null || persisted != entries.get(0).id()) return;
+            try {
+                ByteArrayOutputStream text = new ByteArrayOutputStream();
+                ByteBuffer offs = ByteBuffer.allocate(entries.size() * 8);
+                for (Entry e : entries) {
+                    byte[] line = (e.at() + "\t" + e.text() + "\n").getBytes(StandardCharsets.UTF_8);
+                    text.write(line, 0, line.length);
+                    offs.putLong(logEnd + text.size());
+                }
+                long end = logEnd + text.size();
+                ByteBuffer bytes = ByteBuffer.wrap(text.toByteArray());
+                while (bytes.hasRemaining()) log.write(bytes, logEnd + bytes.position());
+                offs.flip();
+                long at = persisted * 8;
+                while (offs.hasRemaining()) idx.write(offs, at + offs.position());
+                logEnd = end;
+            } catch (IOException ex) {
+                closeFiles();
+            }
+            lock.lock();
+            try {
+                if (this.log != null) persisted += entries.size();
+                written.signalAll();
+                if (idle) dropIfWritten();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<Entry> fromRing(long from, long to) {
+            List<Entry> out = new ArrayList<>((int) Math.max(0, to - from));
+            for (long id = from; id < to; id++) out.add(ring[(int) (id % ringSize)]);
+            return out;
+        }
+
+        /** Messages [from, to) from the files; only ids below {@link #persisted} are there. */
+        List<Entry> read(long from, long to) throws IOException {
+            FileChannel log = this.log, idx = this.idx;
+            if (log == null || from >= to) return List.of();
+            // offs[k] = where message from+k starts, offs[to-from] = where message to-1 ends
+            ByteBuffer offs = ByteBuffer.allocate((int) (to - from + 1) * 8);
+            long pos = (from - 1) * 8;
+            if (from == 0) { offs.position(8); pos = 0; }           // message 0 starts at offset 0
+            for (int r; offs.hasRemaining(); pos += r)
+                if ((r = idx.read(offs, pos)) < 0) throw new IOException("Index cut short");
+            long start = offs.getLong(0), end = offs.getLong((int) (to - from) * 8);
+            ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+            while (bytes.hasRemaining()) if (log.read(bytes, start + bytes.position()) < 0) throw new IOException("Log cut short");
+            List<Entry> out = new ArrayList<>();
+            for (long id = from; id < to; id++) {
+                int a = (int) (offs.getLong((int) (id - from) * 8) - start);
+                int b = (int) (offs.getLong((int) (id - from + 1) * 8) - start) - 1;   // drop the '\n'
+                String line = new String(bytes.array(), a, b - a, StandardCharsets.UTF_8);
+                int tab = line.indexOf('\t');
+                out.add(new Entry(id, Instant.parse(line.substring(0, tab)), line.substring(tab + 1)));
+            }
+            return out;
+        }
+
+        private long offset(long id) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate(8);
+            while (b.hasRemaining()) if (idx.read(b, id * 8 + b.position()) < 0) throw new IOException("Index cut short");
+            return b.getLong(0);
+        }
+
+        void closeFiles() {
+            try { if (log != null) log.close(); } catch (IOException ignored) {}
+            try { if (idx != null) idx.close(); } catch (IOException ignored) {}
+            log = idx = null;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.carecircle.core;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compressed replies for the line protocols ({@code LIST ... GZIP}). The reply is the line
+ * {@code DEFLATE}, then frames of {@code length:i32 bytes} carrying one deflate stream, ended by a
+ * zero-length frame. A frame goes out every {@link #CHUNK} compressed bytes and on each flush
+ * (the deflater is sync-flushed), so a reader can inflate rows while the rest is still being sent.
+ * Inflated, the content is exactly the uncompressed reply.
+ */
+public final class ChunkedDeflate {
+    public static final String MARKER = "DEFLATE";
+    static final int CHUNK = 64 * 1024;
+
+    private ChunkedDeflate() {}
+
+    /**
+     * Compressing stream over {@code raw}; write the {@link #MARKER} line to {@code raw} first.
+     * Closing it ends the deflate stream and writes the end frame but leaves {@code raw} open.
+     */
+    public static OutputStream output(OutputStream raw) {
+        Deflater d = new Deflater(Deflater.BEST_SPEED);
+        return new DeflaterOutputStream(new FrameOutput(raw), d, 8192, true) {
+            @Override public void close() throws IOException {
+                try { super.close(); } finally { d.end(); }
+            }
+        };
+    }
+
+    /** Inflates the frames that follow a {@link #MARKER} line; EOF at the end frame. */
+    public static InputStream input(InputStream raw) {
+        return new InflaterInputStream(new FrameInput(raw), new Inflater(), 8192);
+    }
+
+    /**
+     * Reader for a reply that may or may not be compressed: a leading {@link #MARKER} line
+     * switches to {@link #input}, anything else is read as plain UTF-8 text.
+     */
+    public static BufferedReader reader(InputStream raw) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(raw);
+        in.mark(MARKER.length() + 2);
+        String head = new String(in.readNBytes(MARKER.length() + 2), StandardCharsets.US_ASCII);
+        in.reset();
+        int skip = head.startsWith(MARKER + "\r\n") ? MARKER.length() + 2 : head.startsWith(MARKER + "\n") ? MARKER.length() + 1 : 0;
+        in.skipNBytes(skip);
+        boolean deflated = skip > 0;
+        return new BufferedReader(new InputStreamReader(deflated ? input(in) : in, StandardCharsets.UTF_8));
+    }
+
+    /** Buffers compressed bytes and writes them out as length-prefixed frames. */
+    private static final class FrameOutput extends OutputStream {
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream(CHUNK);
+        private boolean closed;
+
+        FrameOutput(OutputStream raw) { out = new DataOutputStream(raw); }
+
+        @Override public void write(int b) throws IOException { write(new byte[]{(byte) b}, 0, 1); }
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            buf.write(b, off, len);
+            if (buf.size() >= CHUNK) frame();
+        }
+        @Override public void flush() throws IOException { frame(); out.flush(); }
+        @Override public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            frame();
+            out.writeInt(0);
+            out.flush();
+        }
+
+        private void frame() throws IOException {
+            if (buf.size() == 0) return;
+            out.writeInt(buf.size());
+            buf.writeTo(out);
+            buf.reset();
+        }
+    }
+
+    /** Concatenates frame payloads; EOF at the zero-length frame. */
+    private static final class FrameInput extends InputStream {
+        private final DataInputStream in;
+        private int left;
+        private boolean done;
+
+        FrameInput(InputStream raw) { in = new DataInputStream(raw); }
+
+        @Override public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+        @Override public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (left == 0) {
+                if (done) return -1;
+                left = in.readInt();
+                if (left < 0) throw new IOException("Bad frame length " + left);
+                if (left == 0) { done = true; return -1; }
+            }
+            int n = in.read(b, off, Math.min(len, left));
+            if (n < 0) throw new EOFException("Compressed reply cut short");
+            left -= n;
+            return n;
+        }
+    }
+}
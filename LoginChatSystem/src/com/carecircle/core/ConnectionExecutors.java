@@ -0,0 +1,51 @@
+package com.carecircle.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for the blocking thread-per-connection servers. {@code "virtual"} runs each connection
+ * on its own virtual thread when the JDK has them (21+); anything else, or an older JDK, gets an
+ * unbounded pool of platform threads. Virtual threads are looked up reflectively so the tree still
+ * builds and runs on 17.
+ */
+public final class ConnectionExecutors {
+    private ConnectionExecutors() {}
+
+    /** True when this JDK can create virtual threads. */
+    public static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * What {@link #perConnection} runs {@code mode} on here, for the caller to log:
+     * {@code "virtual"} only when asked for and available, else {@code "platform"}.
+     */
+    public static String effectiveMode(String mode) {
+        return isVirtual(mode) && virtualThreadsAvailable() ? "virtual" : "platform";
+    }
+
+    /**
+     * @param mode {@code "virtual"} or {@code "platform"} (case-insensitive); see {@link #effectiveMode}
+     * @param name thread name prefix for platform threads
+     */
+    public static ExecutorService perConnection(String mode, String name) {
+        if (isVirtual(mode)) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException ignored) {}                 // JDK 17-20: platform threads
+        }
+        AtomicInteger n = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> new Thread(r, name + "-" + n.incrementAndGet()));
+    }
+
+    private static boolean isVirtual(String mode) {
+        return "virtual".equalsIgnoreCase(mode == null ? "" : mode.trim());
+    }
+}
@@ -0,0 +1,220 @@
+package com.carecircle.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Memory-mapped CSV tokenizer over UTF-8 bytes.
+ * Rows end at '\n' or at the end of the file (a trailing '\r' is dropped, like
+ * {@code BufferedReader.readLine}) and
+ * cells follow the quoting rules of {@link Dispatchers#csvSplit(String)}. Cell boundaries are
+ * kept as offsets into the mapped bytes, so rows can be tested with
+ * {@link #fieldEqualsIgnoreCase(int, String)} and skipped without allocating anything.
+ * The scanner instance passed to a {@link RowHandler} is only valid during that callback.
+ */
+public final class CsvScanner {
+    /** Callback per row; read cells from the scanner it is given. */
+    public interface RowHandler { void row(CsvScanner row) throws IOException; }
+
+    private static final long WINDOW = 64L << 20;        // mapped at a time
+    private static final long MAP_THRESHOLD = 1L << 20;   // smaller files are just read
+
+    private ByteBuffer buf;
+    private long base;                 // file offset of buf index 0
+    private int rowStart, rowEnd;      // rowEnd excludes the line terminator
+    private int fields;
+    private int[] starts = new int[16], ends = new int[16];
+    private boolean[] quoted = new boolean[16];
+    private boolean stopped;
+
+    private CsvScanner() {}
+
+    /**
+     * Scans every line from byte offset {@code from} to the end of {@code file}, a last line without
+     * '\n' included, as {@code BufferedReader.readLine} would. A handler may end the scan early with
+     * {@link #stop()}.
+     * @return the offset just past the last line delivered (pass it back in to resume)
+     */
+    public static long scan(Path file, long from, RowHandler handler) throws IOException {
+        return scan(file, from, handler, true);
+    }
+
+    /**
+     * Like {@link #scan} but stops before a last line without '\n', which a writer may still be
+     * appending to; pass the returned offset back in to pick it up once it is complete.
+     */
+    public static long tail(Path file, long from, RowHandler handler) throws IOException {
+        return scan(file, from, handler, false);
+    }
+
+    private static long scan(Path file, long from, RowHandler handler, boolean partialLast) throws IOException {
+        if (!Files.exists(file)) return from;
+        CsvScanner s = new CsvScanner();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            long pos = from;
+            long window = WINDOW;
+            while (pos < size) {
+                long len = Math.min(window, size - pos);
+                boolean last = pos + len >= size;
+                s.load(ch, pos, len, size);
+                long consumed = s.rows(handler, last && partialLast);
+                if (consumed == 0) {
+                    if (last) break;                       // partial last line, left for the next tail
+                    window = Math.min(window * 2, Integer.MAX_VALUE); // single line longer than the window
+                    continue;
+                }
+                pos += consumed;
+                if (s.stopped) break;
+                window = WINDOW;
+            }
+            return pos;
+        }
+    }
+
+    // -------- row accessors (valid inside RowHandler.row) --------
+
+    /** Ends the scan after the current row. */
+    public void stop() { stopped = true; }
+
+    /** File offset of the first byte of this row. */
+    public long rowOffset() { return base + rowStart; }
+    /** True for the first line of the file. */
+    public boolean isHeader() { return rowOffset() == 0; }
+    public int fieldCount() { return fields; }
+    /** File offset of the raw bytes of cell {@code i} (inside the quotes for quoted cells). */
+    public long fieldOffset(int i) { check(i); return base + starts[i]; }
+    /** Raw byte length of cell {@code i}, before unescaping doubled quotes. */
+    public int fieldLength(int i) { check(i); return ends[i] - starts[i]; }
+
+    /**
+     * Case-insensitive comparison of cell {@code i} (surrounding spaces ignored) with {@code s}.
+     * Allocation-free for ASCII; cells with other bytes are decoded and compared as Strings.
+     */
+    public boolean fieldEqualsIgnoreCase(int i, String s) {
+        if (i >= fields || s == null) return false;
+        int a = starts[i], b = ends[i];
+        while (a < b && buf.get(a) == ' ') a++;
+        while (b > a && buf.get(b - 1) == ' ') b--;
+        int si = 0, sl = s.length();
+        while (si < sl && s.charAt(si) == ' ') si++;
+        while (sl > si && s.charAt(sl - 1) == ' ') sl--;
+        boolean q = quoted[i];
+        for (int k = a; k < b; k++) {
+            int c = buf.get(k) & 0xFF;
+            if (c >= 0x80) return field(i).trim().equalsIgnoreCase(s.trim());
+            if (q && c == '"') k++;                      // "" -> "
+            if (si >= sl || lower(c) != lower(s.charAt(si++))) return false;
+        }
+        return si == sl;
+    }
+
+    /** Decoded value of cell {@code i}; "" when the row has fewer cells. */
+    public String field(int i) {
+        if (i >= fields) return "";
+        int a = starts[i], b = ends[i];
+        byte[] raw = new byte[b - a];
+        int n = 0;
+        for (int k = a; k < b; k++) {
+            byte c = buf.get(k);
+            raw[n++] = c;
+            if (quoted[i] && c == '"') k++;
+        }
+        return new String(raw, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /** All cells, as {@link Dispatchers#csvSplit(String)} would return them. */
+    public List<String> fields() {
+        List<String> out = new ArrayList<>(fields);
+        for (int i = 0; i < fields; i++) out.add(field(i));
+        return out;
+    }
+
+    /** The raw row text without its line terminator. */
+    public String line() {
+        byte[] raw = new byte[rowEnd - rowStart];
+        buf.get(rowStart, raw);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    // -------- internals --------
+
+    private void load(FileChannel ch, long pos, long len, long size) throws IOException {
+        base = pos;
+        if (size <= MAP_THRESHOLD) {
+            ByteBuffer b = ByteBuffer.allocate((int) len);
+            while (b.hasRemaining() && ch.read(b, pos + b.position()) >= 0) { }
+            buf = b.flip();
+        } else {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+        }
+    }
+
+    /** Delivers complete rows in the current buffer, and with {@code eof} the unterminated rest; returns bytes consumed. */
+    private long rows(RowHandler handler, boolean eof) throws IOException {
+        int limit = buf.limit();
+        int start = 0;
+        for (int k = 0; k < limit; k++) {
+            if (buf.get(k) != '\n') continue;
+            row(handler, start, k);
+            start = k + 1;
+            if (stopped) return start;
+        }
+        if (eof && start < limit) {
+            row(handler, start, limit);
+            start = limit;
+        }
+        return start;
+    }
+
+    private void row(RowHandler handler, int start, int end) throws IOException {
+        rowStart = start;
+        rowEnd = (end > start && buf.get(end - 1) == '\r') ? end - 1 : end;
+        tokenize();
+        handler.row(this);
+    }
+
+    private void tokenize() {
+        fields = 0;
+        int i = rowStart, n = rowEnd;
+        while (i < n) {
+            if (buf.get(i) == '"') {
+                int s = ++i, e = n;
+                while (i < n) {
+                    if (buf.get(i++) == '"') {
+                        if (i < n && buf.get(i) == '"') i++;
+                        else { e = i - 1; break; }
+                    }
+                }
+                add(s, e, true);
+                if (i < n && buf.get(i) == ',') i++;
+            } else {
+                int j = i;
+                while (j < n && buf.get(j) != ',') j++;
+                add(i, j, false);
+                i = j + 1;
+            }
+        }
+    }
+
+    private void add(int s, int e, boolean q) {
+        if (fields == starts.length) {
+            starts = Arrays.copyOf(starts, fields * 2);
+            ends = Arrays.copyOf(ends, fields * 2);
+            quoted = Arrays.copyOf(quoted, fields * 2);
+        }
+        starts[fields] = s; ends[fields] = e; quoted[fields] = q;
+        fields++;
+    }
+
+    private void check(int i) { if (i < 0 || i >= fields) throw new IndexOutOfBoundsException(i); }
+    private static int lower(int c) { return (c >= 'A' && c <= 'Z') ? c + 32 : c; }
+}
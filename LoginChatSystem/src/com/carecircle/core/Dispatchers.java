@@ -7,8 +7,12 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -86,20 +90,14 @@ public final class Dispatchers {
         private void load() {
             try {
                 ensureFile();
-                try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
-                    br.readLine(); // header
-                    String line;
-                    while ((line = br.readLine()) != null) {
-                        var c = csvSplit(line);
-                        if (c.size() >= 2) {
-                            String prov = c.get(0);
-                            String pid = c.get(1);
-                            if (!blank(prov) && !blank(pid)) {
-                                map.computeIfAbsent(prov, k -> ConcurrentHashMap.newKeySet()).add(pid);
-                            }
-                        }
+                CsvScanner.scan(file, 0, row -> {
+                    if (row.isHeader() || row.fieldCount() < 2) return;
+                    String prov = row.field(0);
+                    String pid = row.field(1);
+                    if (!blank(prov) && !blank(pid)) {
+                        map.computeIfAbsent(prov, k -> ConcurrentHashMap.newKeySet()).add(pid);
                     }
-                }
+                });
             } catch (IOException ignored) {}
         }
         private void persist() {
@@ -194,24 +192,237 @@ public final class Dispatchers {
 
         @Override public List<VitalsRecord> listByPatient(String patientId) {
             if (patientId == null || patientId.isBlank()) return List.of();
-            return filter(pid -> pid.equalsIgnoreCase(patientId));
+            return filter(patientId);
+        }
+        @Override public List<VitalsRecord> listAll(){ return filter(null); }
+
+        /** Page token is the byte offset to resume scanning from; a page that gets no further ends paging. */
+        @Override public VitalsPage listPage(Predicate<String> patientFilter, String pageToken, int pageSize) {
+            List<VitalsRecord> out = new ArrayList<>();
+            long from = pageToken == null ? 0 : Long.parseLong(pageToken);
+            long next;
+            try {
+                next = CsvScanner.scan(csv.toPath(), from, row -> {
+                    if (row.isHeader() || row.fieldCount() == 0) return;
+                    if (patientFilter != null && !patientFilter.test(row.field(0))) return;
+                    out.add(VitalsRecord.fromCsv(row.fields()));
+                    if (out.size() >= pageSize) row.stop();
+                });
+            } catch (IOException e) {
+                return new VitalsPage(out, null);
+            }
+            return new VitalsPage(out, next > from && next < csv.length() ? Long.toString(next) : null);
         }
-        @Override public List<VitalsRecord> listAll(){ return filter(pid -> true); }
 
-        private List<VitalsRecord> filter(java.util.function.Predicate<String> pidPred) {
+        /** Rows whose patientId differs from {@code patientId} (null = all) are skipped before decoding. */
+        private List<VitalsRecord> filter(String patientId) {
             List<VitalsRecord> out = new ArrayList<>();
-            if (!csv.exists()) return out;
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(csv), StandardCharsets.UTF_8))) {
-                br.readLine(); // header
-                String line;
-                while ((line = br.readLine()) != null) {
-                    var cols = csvSplit(line);
-                    if (cols.isEmpty()) continue;
-                    String pid = cols.get(0);
-                    if (!pidPred.test(pid)) continue;
-                    out.add(VitalsRecord.fromCsv(cols));
+            try {
+                CsvScanner.scan(csv.toPath(), 0, row -> {
+                    if (row.isHeader() || row.fieldCount() == 0) return;
+                    if (patientId != null && !row.fieldEqualsIgnoreCase(0, patientId)) return;
+                    out.add(VitalsRecord.fromCsv(row.fields()));
+                });
+            } catch (IOException ignored) {}
+            return out;
+        }
+    }
+
+    /**
+     * Loads vitals.csv (or a binary {@link VitalsLog}) once into a per-patient index, then on each
+     * call tails only the bytes appended since the last read (tracked by offset/file length).
+     * A file that shrinks (rewritten or truncated) is re-indexed from scratch.
+     * Rows live in a {@link VitalsColumns} store and are materialised per call; a second per-patient
+     * index kept sorted by submittedAt answers time-range queries with two binary searches, and
+     * monthly rollups updated as rows are indexed answer {@link #monthlyAggregate} in O(1).
+     */
+    static final class IndexedVitalsService implements VitalsDispatch {
+        private final File csv;
+        private final VitalsLog.Cursor log;   // non-null when the file is a binary log
+        private final ReentrantReadWriteLock rw = new ReentrantReadWriteLock();
+        private final VitalsColumns rows = new VitalsColumns();
+        private final Map<String, IntList> byPatient = new HashMap<>();
+        private final Map<String, IntList> byPatientTime = new HashMap<>();   // rows with a timestamp, sorted
+        private final VitalsRollups rollups = new VitalsRollups();
+        private long offset;          // bytes consumed, always at a line boundary; guarded by rw
+
+        IndexedVitalsService(File csv){ this(csv, false); }
+        IndexedVitalsService(File file, boolean binary){
+            this.csv = Objects.requireNonNull(file);
+            this.log = binary ? new VitalsLog.Cursor(file.toPath()) : null;
+        }
+
+        @Override public List<VitalsRecord> listByPatient(String patientId) {
+            if (patientId == null || patientId.isBlank()) return List.of();
+            refresh();
+            rw.readLock().lock();
+            try {
+                IntList l = byPatient.get(key(patientId));
+                if (l == null) return List.of();
+                List<VitalsRecord> out = new ArrayList<>(l.size());
+                for (int i = 0; i < l.size(); i++) out.add(rows.get(l.get(i)));
+                return out;
+            } finally { rw.readLock().unlock(); }
+        }
+        @Override public List<VitalsRecord> listByPatientBetween(String patientId, Instant from, Instant to) {
+            if (patientId == null || patientId.isBlank() || from == null || to == null) return List.of();
+            refresh();
+            rw.readLock().lock();
+            try {
+                IntList l = byPatientTime.get(key(patientId));
+                if (l == null) return List.of();
+                int lo = lowerBound(l, from.toEpochMilli()), hi = lowerBound(l, to.toEpochMilli());
+                List<VitalsRecord> out = new ArrayList<>(Math.max(0, hi - lo));
+                for (int i = lo; i < hi; i++) out.add(rows.get(l.get(i)));
+                return out;
+            } finally { rw.readLock().unlock(); }
+        }
+        @Override public MonthlyVitals monthlyAggregate(String patientId, YearMonth month) {
+            refresh();
+            rw.readLock().lock();   // refresh may be clearing and rebuilding the rollups
+            try { return rollups.get(patientId, month); }
+            finally { rw.readLock().unlock(); }
+        }
+        /** Page token is the row number to resume from; rows are materialised only once they match. */
+        @Override public VitalsPage listPage(Predicate<String> patientFilter, String pageToken, int pageSize) {
+            refresh();
+            rw.readLock().lock();
+            try {
+                int r = pageToken == null ? 0 : Integer.parseInt(pageToken);
+                List<VitalsRecord> out = new ArrayList<>(Math.min(pageSize, 1024));
+                for (; r < rows.size() && out.size() < pageSize; r++) {
+                    if (patientFilter == null || patientFilter.test(rows.patientId(r))) out.add(rows.get(r));
+                }
+                return new VitalsPage(out, r < rows.size() ? Integer.toString(r) : null);
+            } finally { rw.readLock().unlock(); }
+        }
+        @Override public List<VitalsRecord> listAll() {
+            refresh();
+            rw.readLock().lock();
+            try {
+                List<VitalsRecord> out = new ArrayList<>(rows.size());
+                for (int r = 0; r < rows.size(); r++) out.add(rows.get(r));
+                return out;
+            } finally { rw.readLock().unlock(); }
+        }
+
+        private void refresh() {
+            long len = csv.length();
+            rw.readLock().lock();
+            try { if (len == offset) return; }
+            finally { rw.readLock().unlock(); }
+            rw.writeLock().lock();
+            try {
+                len = csv.length();
+                if (len < offset) {
+                    byPatient.clear(); byPatientTime.clear(); rollups.clear(); rows.clear(); offset = 0;
+                    if (log != null) log.reset();
+                }
+                if (len > offset) tail();
+            } catch (IOException ignored) {
+            } finally { rw.writeLock().unlock(); }
+        }
+
+        /** Indexes every complete line after offset; a trailing partial line waits for the next call. */
+        private void tail() throws IOException {
+            if (log != null) {
+                log.poll(pid -> true, this::index);
+                offset = log.offset();
+                return;
+            }
+            offset = CsvScanner.tail(csv.toPath(), offset, row -> {
+                if (row.isHeader() || row.fieldCount() == 0) return;
+                index(VitalsRecord.fromCsv(row.fields()));
+            });
+        }
+
+        private void index(VitalsRecord v) {
+            int r = rows.add(v);
+            rollups.add(v);
+            String k = key(v.patientId());
+            byPatient.computeIfAbsent(k, x -> new IntList()).add(r);
+            if (!rows.hasSubmittedAt(r)) return;
+            IntList t = byPatientTime.computeIfAbsent(k, x -> new IntList());
+            long at = rows.submittedAtMillis(r);
+            // appends arrive in time order almost always; late rows are inserted in place
+            if (t.isEmpty() || rows.submittedAtMillis(t.get(t.size() - 1)) <= at) t.add(r);
+            else t.insert(lowerBound(t, at + 1), r);
+        }
+
+        /** First position in {@code t} whose submittedAt is {@code >= millis}. */
+        private int lowerBound(IntList t, long millis) {
+            int lo = 0, hi = t.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (rows.submittedAtMillis(t.get(mid)) < millis) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        private static String key(String patientId){ return patientId.trim().toLowerCase(Locale.ROOT); }
+    }
+
+    /**
+     * Reads a {@link VitalsSegments} store, skipping sealed segments whose footer (time range,
+     * patient bloom filter) rules them out. Page tokens are {@link VitalsSegments.Position}s: they
+     * survive {@link VitalsCompactor} normalizing a segment, and a token into a segment downsampled
+     * since throws {@link VitalsPage.ExpiredTokenException}. Monthly aggregates weight downsampled
+     * rows by the samples they stand for.
+     */
+    static final class SegmentedVitalsService implements VitalsDispatch {
+        private final VitalsSegments segments;
+        SegmentedVitalsService(VitalsSegments segments){ this.segments = Objects.requireNonNull(segments); }
+
+        @Override public List<VitalsRecord> listByPatient(String patientId) {
+            if (patientId == null || patientId.isBlank()) return List.of();
+            return collect(patientId, null, null);
+        }
+        @Override public List<VitalsRecord> listAll(){ return collect(null, null, null); }
+        @Override public List<VitalsRecord> listByPatientBetween(String patientId, Instant from, Instant to) {
+            if (patientId == null || patientId.isBlank() || from == null || to == null) return List.of();
+            return collect(patientId, from, to);
+        }
+        @Override public VitalsPage listPage(Predicate<String> patientFilter, String pageToken, int pageSize) {
+            List<VitalsRecord> out = new ArrayList<>();
+            VitalsSegments.Position at = VitalsSegments.Position.parse(pageToken);
+            try {
+                var all = segments.segments();
+                for (int i = 0; i < all.size(); i++) {
+                    var s = all.get(i);
+                    if (s.number() < at.segment()) continue;
+                    var end = segments.scanSegment(s, at, null, null, null, false, row -> {
+                        if (patientFilter != null && !patientFilter.test(row.field(0))) return;
+                        out.add(VitalsRecord.fromCsv(row.fields()));
+                        if (out.size() >= pageSize) row.stop();
+                    });
+                    if (out.size() >= pageSize) {
+                        boolean more = i < all.size() - 1 || end.offset() < Files.size(s.file());
+                        return new VitalsPage(out, more ? end.toString() : null);
+                    }
                 }
             } catch (IOException ignored) {}
+            return new VitalsPage(out, null);
+        }
+        @Override public MonthlyVitals monthlyAggregate(String patientId, YearMonth month) {
+            if (patientId == null || patientId.isBlank() || month == null) return MonthlyVitals.empty(patientId, month);
+            ZoneId zone = ZoneId.systemDefault();
+            VitalsRollups r = new VitalsRollups(zone);
+            try {
+                segments.scan(patientId, month.atDay(1).atStartOfDay(zone).toInstant(),
+                        month.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant(),
+                        row -> {
+                            VitalsRecord v = VitalsRecord.fromCsv(row.fields());
+                            r.add(v, VitalsSegments.tally(row, v));
+                        });
+            } catch (IOException ignored) {}
+            return r.get(patientId, month);
+        }
+
+        private List<VitalsRecord> collect(String patientId, Instant from, Instant to) {
+            List<VitalsRecord> out = new ArrayList<>();
+            try {
+                segments.scan(patientId, from, to, row -> out.add(VitalsRecord.fromCsv(row.fields())));
+            } catch (IOException ignored) {}
             return out;
         }
     }
@@ -229,6 +440,32 @@ public final class Dispatchers {
                         : target.listByPatient(patientId);
             };
         }
+        @Override public List<VitalsRecord> listByPatientBetween(String patientId, Instant from, Instant to) {
+            return switch (scope.role()) {
+                case PATIENT  -> target.listByPatientBetween(scope.patientId(), from, to);
+                case PROVIDER -> (pac != null && !pac.canAccess(scope.providerId(), patientId)) ? List.of()
+                        : target.listByPatientBetween(patientId, from, to);
+            };
+        }
+        @Override public MonthlyVitals monthlyAggregate(String patientId, YearMonth month) {
+            return switch (scope.role()) {
+                case PATIENT  -> target.monthlyAggregate(scope.patientId(), month);
+                case PROVIDER -> (pac != null && !pac.canAccess(scope.providerId(), patientId)) ? MonthlyVitals.empty(patientId, month)
+                        : target.monthlyAggregate(patientId, month);
+            };
+        }
+        /** Scope is applied as a patient filter while the target pages, not to a materialised list. */
+        @Override public VitalsPage listPage(Predicate<String> patientFilter, String pageToken, int pageSize) {
+            Predicate<String> inScope = switch (scope.role()) {
+                case PATIENT  -> pid -> pid != null && pid.equalsIgnoreCase(scope.patientId());
+                case PROVIDER -> {
+                    if (pac == null) yield pid -> true;
+                    var allowed = pac.patientsFor(scope.providerId());
+                    yield allowed::contains;
+                }
+            };
+            return target.listPage(patientFilter == null ? inScope : inScope.and(patientFilter), pageToken, pageSize);
+        }
         @Override public List<VitalsRecord> listAll() {
             return switch (scope.role()) {
                 case PATIENT  -> target.listByPatient(scope.patientId());
@@ -243,8 +480,17 @@ public final class Dispatchers {
 
     // -------- Factories --------
     public static final class Factory {
+        /**
+         * System property selecting the root vitals service: {@code csv} (default, rescans per call),
+         * {@code indexed} (tails vitals.csv), {@code binary} (tails the vitals.bin {@link VitalsLog}) or
+         * {@code segmented} (prunes the vitals.segments/ {@link VitalsSegments}).
+         */
+        public static final String VITALS_IMPL = "carecircle.vitals.impl";
+
         private static final File APPTS  = new File("appointments.csv");
         private static final File VITALS = new File("vitals.csv");
+        private static final File VITALS_LOG = new File("vitals.bin");
+        private static final File VITALS_SEGMENTS = new File("vitals.segments");
         private static final File ACCESS = new File("provider_access.csv");
 
         private static volatile CalendarDispatch ROOT_CAL;
@@ -261,10 +507,18 @@ public final class Dispatchers {
         }
         private static VitalsDispatch rootVitals() {
             if (ROOT_VIT == null) synchronized (Factory.class) {
-                if (ROOT_VIT == null) ROOT_VIT = new CsvVitalsService(VITALS);
+                if (ROOT_VIT == null) ROOT_VIT = newRootVitals(System.getProperty(VITALS_IMPL, "csv"));
             }
             return ROOT_VIT;
         }
+        private static VitalsDispatch newRootVitals(String impl) {
+            return switch (impl.trim().toLowerCase(Locale.ROOT)) {
+                case "indexed" -> new IndexedVitalsService(VITALS);
+                case "binary"  -> new IndexedVitalsService(VITALS_LOG, true);
+                case "segmented" -> new SegmentedVitalsService(new VitalsSegments(VITALS_SEGMENTS.toPath()));
+                default        -> new CsvVitalsService(VITALS);
+            };
+        }
         public static ProviderAccessControl accessControl() {
             if (PAC == null) synchronized (Factory.class) {
                 if (PAC == null) PAC = new CsvProviderAccessControl(ACCESS);
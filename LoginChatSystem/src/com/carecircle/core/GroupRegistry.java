@@ -0,0 +1,60 @@
+package com.carecircle.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chat group membership. Each group maps to an immutable member array that every join and leave
+ * replaces (copy-on-write through {@link ConcurrentHashMap#compute}, so only changes to the same
+ * group wait for each other). {@link #members} reads the current array with one map lookup and no
+ * lock, so broadcasts never contend with joins, leaves or each other. A group is removed in the same
+ * step that takes its last member out: empty groups do not accumulate.
+ */
+public final class GroupRegistry<M> {
+    private final ConcurrentHashMap<String, Object[]> groups = new ConcurrentHashMap<>();
+
+    /** Adds {@code member} to {@code group}, creating the group; joining twice is a no-op. */
+    public void join(String group, M member) {
+        groups.compute(group, (g, cur) -> {
+            if (cur == null) return new Object[]{member};
+            if (indexOf(cur, member) >= 0) return cur;
+            Object[] next = Arrays.copyOf(cur, cur.length + 1);
+            next[cur.length] = member;
+            return next;
+        });
+    }
+
+    /** @return false when {@code member} was not in {@code group} (or group is null) */
+    public boolean leave(String group, M member) {
+        if (group == null) return false;
+        boolean[] removed = {false};
+        groups.computeIfPresent(group, (g, cur) -> {
+            int i = indexOf(cur, member);
+            if (i < 0) return cur;
+            removed[0] = true;
+            if (cur.length == 1) return null;                  // last one out: the group goes
+            Object[] next = new Object[cur.length - 1];
+            System.arraycopy(cur, 0, next, 0, i);
+            System.arraycopy(cur, i + 1, next, i, cur.length - i - 1);
+            return next;
+        });
+        return removed[0];
+    }
+
+    /** Snapshot of the members at the time of the call; later joins and leaves do not show in it. */
+    @SuppressWarnings("unchecked")
+    public List<M> members(String group) {
+        Object[] cur = group == null ? null : groups.get(group);
+        return cur == null ? List.of() : (List<M>) Collections.unmodifiableList(Arrays.asList(cur));
+    }
+
+    /** Number of non-empty groups. */
+    public int groupCount() { return groups.size(); }
+
+    private static int indexOf(Object[] members, Object m) {
+        for (int i = 0; i < members.length; i++) if (members[i] == m) return i;
+        return -1;
+    }
+}
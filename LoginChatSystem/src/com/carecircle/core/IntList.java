@@ -0,0 +1,31 @@
+package com.carecircle.core;
+
+import java.util.Arrays;
+
+/** Growable list of primitive ints (row numbers, dictionary codes) without boxing. */
+final class IntList {
+    private int[] a;
+    private int size;
+
+    IntList() { this(16); }
+    IntList(int capacity) { a = new int[Math.max(1, capacity)]; }
+
+    void add(int v) {
+        if (size == a.length) a = Arrays.copyOf(a, size + (size >> 1) + 1);
+        a[size++] = v;
+    }
+    void insert(int at, int v) {
+        if (at < 0 || at > size) throw new IndexOutOfBoundsException(at);
+        if (size == a.length) a = Arrays.copyOf(a, size + (size >> 1) + 1);
+        System.arraycopy(a, at, a, at + 1, size - at);
+        a[at] = v;
+        size++;
+    }
+    int get(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException(i);
+        return a[i];
+    }
+    int size() { return size; }
+    boolean isEmpty() { return size == 0; }
+    void clear() { size = 0; }
+}
@@ -0,0 +1,25 @@
+package com.carecircle.core;
+
+import java.time.YearMonth;
+
+/** Per-patient, per-calendar-month aggregate of each vitals metric. */
+public record MonthlyVitals(
+        String patientId,
+        YearMonth month,
+        long records,
+        Stat heartRateBpm,
+        Stat bpSystolic,
+        Stat bpDiastolic,
+        Stat temperatureC,
+        Stat weightKg
+) {
+    /** Running count/sum/min/max of one metric; min/max are NaN when count is 0. */
+    public record Stat(long count, double sum, double min, double max) {
+        public static final Stat EMPTY = new Stat(0, 0, Double.NaN, Double.NaN);
+        public double average() { return count == 0 ? Double.NaN : sum / count; }
+    }
+
+    public static MonthlyVitals empty(String patientId, YearMonth month) {
+        return new MonthlyVitals(patientId, month, 0, Stat.EMPTY, Stat.EMPTY, Stat.EMPTY, Stat.EMPTY, Stat.EMPTY);
+    }
+}
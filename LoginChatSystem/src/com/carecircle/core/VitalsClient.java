@@ -0,0 +1,341 @@
+package com.carecircle.core;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Client side of the vitals server's persistent protocol. A connection opened with {@code SESSION}
+ * carries every command as {@code <id> <command>}; requests can be pipelined and a reader thread
+ * hands each tagged reply to its caller. {@code LIST}, {@code AVG} and {@code SUBMIT BATCH} replies
+ * run to their {@code END} line, everything else is one line.
+ * <p>
+ * A client keeps up to {@code poolSize} such connections open and sends each request on an idle
+ * one, opening another while the pool has room, else on the least busy. A dropped connection fails
+ * the requests in flight on it and a later request reconnects; failed connects (and a
+ * {@code BUSY retry-after} from the server) back off exponentially from {@link #MIN_BACKOFF} to
+ * {@link #MAX_BACKOFF} ms, during which requests fail fast. {@link #shared} hands every UI in the
+ * process the same client per server. {@link #subscribe} streams newly saved rows over a
+ * connection of its own.
+ */
+public final class VitalsClient implements Closeable {
+    static final long MIN_BACKOFF = 100, MAX_BACKOFF = 5000;
+    // carecircle.client.poolSize / timeoutMillis: defaults for shared clients
+    private static final int SHARED_POOL = Integer.getInteger("carecircle.client.poolSize", 2);
+    private static final long SHARED_TIMEOUT = Long.getLong("carecircle.client.timeoutMillis", 3000L);
+    private static final Map<String, VitalsClient> SHARED = new ConcurrentHashMap<>();
+
+    private final String host;
+    private final int port;
+    private final long timeoutMillis;
+    private final boolean shared;
+    private final AtomicLong ids = new AtomicLong();
+    private final Connection[] pool;
+    private long backoff, retryAt;     // guarded by this
+
+    private static final class Pending {
+        final boolean multiLine;
+        final List<String> lines = new ArrayList<>();
+        final CompletableFuture<List<String>> done = new CompletableFuture<>();
+        Pending(boolean multiLine) { this.multiLine = multiLine; }
+    }
+
+    /** Requests in flight belong to the connection they were written to. */
+    private record Connection(int slot, Socket socket, BufferedWriter out, Map<String, Pending> pending) {}
+
+    /** @param timeoutMillis default for {@link #request} and {@link #send}, and the connect timeout */
+    public VitalsClient(String host, int port, long timeoutMillis) {
+        this(host, port, timeoutMillis, 1, false);
+    }
+
+    private VitalsClient(String host, int port, long timeoutMillis, int poolSize, boolean shared) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+        this.shared = shared;
+        this.pool = new Connection[Math.max(1, poolSize)];
+    }
+
+    /** The process-wide client for {@code host:port}; {@link #close()} on it does nothing. */
+    public static VitalsClient shared(String host, int port) {
+        return SHARED.computeIfAbsent(host + ":" + port, k -> new VitalsClient(host, port, SHARED_TIMEOUT, SHARED_POOL, true));
+    }
+
+    /**
+     * Sends one command without waiting; the future fails after the default timeout.
+     * @return the reply lines with the id stripped (for LIST/AVG, up to and including END)
+     */
+    public CompletableFuture<List<String>> send(String command) {
+        return send(command, List.of(), timeoutMillis);
+    }
+
+    /** {@link #send(String)} failing with a {@link TimeoutException} after {@code timeoutMillis}. */
+    public CompletableFuture<List<String>> send(String command, long timeoutMillis) {
+        return send(command, List.of(), timeoutMillis);
+    }
+
+    /**
+     * {@code SUBMIT BATCH <n>} with its rows, written back to back so they stay together.
+     * @return one {@code ROW <i> ...} line per row, the {@code BATCH} summary and END
+     */
+    public CompletableFuture<List<String>> sendBatch(List<String> rows) {
+        return send("SUBMIT BATCH " + rows.size(), rows, timeoutMillis);
+    }
+
+    private CompletableFuture<List<String>> send(String command, List<String> rows, long timeout) {
+        String id = Long.toString(ids.incrementAndGet());
+        Pending p = new Pending(isMultiLine(command));
+        Connection c = null;
+        try {
+            c = connection();
+            c.pending().put(id, p);
+            Map<String, Pending> pending = c.pending();
+            p.done.orTimeout(timeout, TimeUnit.MILLISECONDS).whenComplete((r, e) -> pending.remove(id, p));
+            if (c.socket().isClosed()) throw new IOException("Connection closed");   // reader already gave up
+            // the server closes a session after QUIT: later requests must not land on it
+            if ("QUIT".equalsIgnoreCase(command.trim())) retire(c);
+            synchronized (c.out()) {
+                c.out().write(id + " " + command); c.out().newLine();
+                for (String r : rows) { c.out().write(r); c.out().newLine(); }
+                c.out().flush();
+            }
+        } catch (IOException e) {
+            p.done.completeExceptionally(e);
+            if (c != null) disconnect(c);
+        }
+        return p.done;
+    }
+
+    /** Blocking {@link #send}; lines joined with " | ", or "ERROR: ..." when it fails or times out. */
+    public String request(String command) {
+        return request(command, timeoutMillis);
+    }
+
+    public String request(String command, long timeoutMillis) {
+        try {
+            return String.join(" | ", lines(command, timeoutMillis));
+        } catch (IOException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Blocking request for the reply lines. A one-shot {@code LIST ... GZIP} goes over a connection
+     * of its own and is inflated as it arrives ({@link ChunkedDeflate}): a compressed reply cannot
+     * share a session. So does {@code QUIT}, which would end a pooled session others send on.
+     * Everything else goes through the pool.
+     * @throws IOException when the request fails or no reply comes within {@code timeoutMillis} (on a
+     *         connection of its own: when the reply stalls that long)
+     */
+    public List<String> lines(String command, long timeoutMillis) throws IOException {
+        String t = command.trim().toUpperCase();
+        if (t.endsWith(" GZIP") || t.equals("QUIT")) return oneShot(command, timeoutMillis);
+        try {
+            return send(command, timeoutMillis).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) throw new IOException("no response within " + timeoutMillis + " ms");
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    private List<String> oneShot(String command, long timeoutMillis) throws IOException {
+        checkBackoff();
+        List<String> out = new ArrayList<>();
+        try (Socket s = open(timeoutMillis)) {
+            s.setSoTimeout((int) Math.max(1, timeoutMillis));
+            BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+            bw.write(command); bw.newLine(); bw.flush();
+            BufferedReader br = ChunkedDeflate.reader(s.getInputStream());
+            for (String ln; (ln = br.readLine()) != null; ) {
+                out.add(ln);
+                if ("END".equals(ln) || ln.startsWith("ERROR:")) break;
+            }
+        }
+        if (!out.isEmpty() && out.get(0).startsWith("BUSY retry-after=")) backOff(out.get(0));
+        return out;
+    }
+
+    /**
+     * Opens a separate {@code SUBSCRIBE} connection and hands each pushed CSV row to {@code onRow}
+     * on a daemon thread until the returned handle is closed or the server goes away.
+     * @param target a patient id or {@code ALL}
+     * @param providerId limits rows to that provider's patients; null for none
+     * @throws IOException when the server cannot be reached or refuses the subscription
+     */
+    public Closeable subscribe(String target, String providerId, Consumer<String> onRow) throws IOException {
+        Socket s = open(timeoutMillis);
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+            out.write("SUBSCRIBE " + target + (providerId == null ? "" : " " + providerId)); out.newLine(); out.flush();
+            s.setSoTimeout((int) Math.max(1, timeoutMillis));
+            String ok = in.readLine();
+            if (ok == null || !ok.startsWith("SUBSCRIBED")) throw new IOException(ok == null ? "Connection closed" : ok);
+            in.readLine();                                          // CSV header
+            s.setSoTimeout(0);
+            Thread reader = new Thread(() -> {
+                try {
+                    for (String line; (line = in.readLine()) != null; ) onRow.accept(line);
+                } catch (IOException ignored) {
+                } finally {
+                    try { s.close(); } catch (IOException ignored) {}
+                }
+            }, "vitals-subscriber");
+            reader.setDaemon(true);
+            reader.start();
+            return s;
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+    }
+
+    /** Closes the pool's connections, failing what is in flight; a shared client stays open. */
+    @Override public void close() {
+        if (shared) return;
+        List<Connection> open = new ArrayList<>();
+        synchronized (this) {
+            for (Connection c : pool) if (c != null) open.add(c);
+        }
+        open.forEach(this::disconnect);
+    }
+
+    /**
+     * An idle pooled connection, else a new one while a slot is free (and not backing off),
+     * else the one with the fewest requests in flight.
+     */
+    private synchronized Connection connection() throws IOException {
+        Connection least = null;
+        int free = -1;
+        for (int i = 0; i < pool.length; i++) {
+            Connection c = pool[i];
+            if (c == null) { if (free < 0) free = i; }
+            else if (least == null || c.pending().size() < least.pending().size()) least = c;
+        }
+        if (least != null && (free < 0 || least.pending().isEmpty() || System.currentTimeMillis() < retryAt)) return least;
+        try {
+            checkBackoff();
+            Connection c = session(free);
+            backoff = 0;
+            pool[free] = c;
+            return c;
+        } catch (IOException e) {
+            if (least != null) return least;
+            throw e;
+        }
+    }
+
+    private Connection session(int slot) throws IOException {
+        Socket s;
+        try {
+            s = open(timeoutMillis);
+        } catch (IOException e) {
+            backOff(null);
+            throw e;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+        String ok;
+        try {
+            out.write("SESSION"); out.newLine(); out.flush();
+            s.setSoTimeout((int) Math.max(1, timeoutMillis));
+            ok = in.readLine();
+            s.setSoTimeout(0);
+        } catch (IOException e) {
+            s.close();
+            backOff(null);
+            throw e;
+        }
+        if (!"SESSION OK".equals(ok)) {
+            s.close();
+            if (ok != null && ok.startsWith("BUSY")) { backOff(ok); throw new IOException("Server busy: " + ok); }
+            throw new IOException("Server does not support sessions: " + ok);
+        }
+        Connection c = new Connection(slot, s, out, new ConcurrentHashMap<>());
+        Thread reader = new Thread(() -> read(c, in), "vitals-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+        return c;
+    }
+
+    private Socket open(long timeoutMillis) throws IOException {
+        Socket s = new Socket();
+        try {
+            s.connect(new InetSocketAddress(host, port), (int) Math.max(1, timeoutMillis));
+            return s;
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+    }
+
+    private synchronized void checkBackoff() throws IOException {
+        long wait = retryAt - System.currentTimeMillis();
+        if (wait > 0) throw new IOException("Server unavailable, retrying in " + wait + " ms");
+    }
+
+    /** Doubles the backoff, or waits what a {@code BUSY retry-after=<ms>} line asks when that is longer. */
+    private synchronized void backOff(String busy) {
+        backoff = Math.min(MAX_BACKOFF, Math.max(MIN_BACKOFF, backoff * 2));
+        long wait = backoff;
+        if (busy != null) {
+            try { wait = Math.max(wait, Long.parseLong(busy.substring(busy.indexOf('=') + 1).trim())); }
+            catch (NumberFormatException ignored) {}
+        }
+        retryAt = Math.max(retryAt, System.currentTimeMillis() + wait);
+    }
+
+    private void read(Connection c, BufferedReader in) {
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int sp = line.indexOf(' ');
+                String id = sp < 0 ? line : line.substring(0, sp);
+                String body = sp < 0 ? "" : line.substring(sp + 1);
+                Pending p = c.pending().get(id);
+                if (p == null) continue;                            // e.g. timed out
+                p.lines.add(body);
+                if (!p.multiLine || "END".equals(body)) {
+                    c.pending().remove(id);
+                    p.done.complete(p.lines);
+                }
+            }
+        } catch (IOException ignored) {
+        } finally {
+            retire(c);
+            try { c.socket().close(); } catch (IOException ignored) {}
+            IOException closed = new IOException("Connection closed");
+            c.pending().values().forEach(p -> p.done.completeExceptionally(closed));
+            c.pending().clear();
+        }
+    }
+
+    /** Takes {@code c} out of the pool; requests already on it still get their replies. */
+    private synchronized void retire(Connection c) {
+        if (pool[c.slot()] == c) pool[c.slot()] = null;
+    }
+
+    private void disconnect(Connection c) {
+        retire(c);
+        try { c.socket().close(); } catch (IOException ignored) {}      // reader thread fails what is pending
+    }
+
+    private static boolean isMultiLine(String command) {
+        String t = command.trim().toUpperCase();
+        return t.startsWith("LIST ") || t.startsWith("AVG ") || t.startsWith("SUBMIT BATCH");
+    }
+}
@@ -0,0 +1,102 @@
+package com.carecircle.core;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Column-oriented vitals storage: one primitive array per metric, a null bitmap per
+ * nullable column, and dictionary-encoded patient ids/names/moods.
+ * {@link VitalsRecord} objects are only materialised by {@link #get(int)}.
+ * Timestamps are kept as epoch millis, so sub-millisecond precision is dropped.
+ * Not thread-safe; callers guard it with their own lock.
+ */
+public final class VitalsColumns {
+    private final Dictionary patients = new Dictionary();
+    private final Dictionary names = new Dictionary();
+    private final Dictionary moods = new Dictionary();
+
+    private int size;
+    private int[] patient = new int[0], name = new int[0], mood = new int[0];
+    private int[] hr = new int[0], sys = new int[0], dia = new int[0];
+    private double[] tempC = new double[0], weightKg = new double[0];
+    private long[] at = new long[0];
+    private String[] diet = new String[0];
+    // set bit = value missing
+    private final BitSet hrNull = new BitSet(), sysNull = new BitSet(), diaNull = new BitSet();
+    private final BitSet tempNull = new BitSet(), kgNull = new BitSet(), atNull = new BitSet();
+
+    /** Appends a row and returns its row number. */
+    public int add(VitalsRecord v) {
+        if (size == at.length) grow();
+        int r = size++;
+        patient[r] = patients.code(nz(v.patientId()));
+        name[r] = names.code(nz(v.patientName()));
+        mood[r] = moods.code(nz(v.mood()));
+        diet[r] = nz(v.dietNotes());
+        if (v.heartRateBpm() == null) hrNull.set(r); else hr[r] = v.heartRateBpm();
+        if (v.bpSystolic() == null) sysNull.set(r); else sys[r] = v.bpSystolic();
+        if (v.bpDiastolic() == null) diaNull.set(r); else dia[r] = v.bpDiastolic();
+        if (v.temperatureC() == null) tempNull.set(r); else tempC[r] = v.temperatureC();
+        if (v.weightKg() == null) kgNull.set(r); else weightKg[r] = v.weightKg();
+        if (v.submittedAt() == null) atNull.set(r); else at[r] = v.submittedAt().toEpochMilli();
+        return r;
+    }
+
+    /** Materialises row {@code r} as a record. */
+    public VitalsRecord get(int r) {
+        check(r);
+        return new VitalsRecord(
+                patients.value(patient[r]), names.value(name[r]),
+                hrNull.get(r) ? null : hr[r],
+                sysNull.get(r) ? null : sys[r],
+                diaNull.get(r) ? null : dia[r],
+                tempNull.get(r) ? null : tempC[r],
+                moods.value(mood[r]), diet[r],
+                kgNull.get(r) ? null : weightKg[r],
+                atNull.get(r) ? null : Instant.ofEpochMilli(at[r])
+        );
+    }
+
+    public int size() { return size; }
+    public String patientId(int r) { check(r); return patients.value(patient[r]); }
+    /** Dictionary code of the row's patient id; equal ids share a code. */
+    public int patientCode(int r) { check(r); return patient[r]; }
+    public boolean hasSubmittedAt(int r) { check(r); return !atNull.get(r); }
+    /** Epoch millis of submittedAt; only meaningful when {@link #hasSubmittedAt(int)}. */
+    public long submittedAtMillis(int r) { check(r); return at[r]; }
+
+    public void clear() {
+        size = 0;
+        patients.clear(); names.clear(); moods.clear();
+        Arrays.fill(diet, null);
+        for (BitSet b : new BitSet[]{hrNull, sysNull, diaNull, tempNull, kgNull, atNull}) b.clear();
+    }
+
+    private void grow() {
+        int n = Math.max(1024, at.length + (at.length >> 1));
+        patient = Arrays.copyOf(patient, n); name = Arrays.copyOf(name, n); mood = Arrays.copyOf(mood, n);
+        hr = Arrays.copyOf(hr, n); sys = Arrays.copyOf(sys, n); dia = Arrays.copyOf(dia, n);
+        tempC = Arrays.copyOf(tempC, n); weightKg = Arrays.copyOf(weightKg, n);
+        at = Arrays.copyOf(at, n);
+        diet = Arrays.copyOf(diet, n);
+    }
+    private void check(int r) { if (r < 0 || r >= size) throw new IndexOutOfBoundsException(r); }
+    private static String nz(String s) { return s == null ? "" : s; }
+
+    /** Interns strings to dense int codes. */
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int code(String s) {
+            Integer c = codes.get(s);
+            if (c != null) return c;
+            int next = values.size();
+            values.add(s);
+            codes.put(s, next);
+            return next;
+        }
+        String value(int code) { return values.get(code); }
+        void clear() { codes.clear(); values.clear(); }
+    }
+}
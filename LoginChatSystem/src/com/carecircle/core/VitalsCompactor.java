@@ -0,0 +1,186 @@
+package com.carecircle.core;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background compaction for sealed {@link VitalsSegments}. Each pass rewrites sealed segments
+ * that are behind their target {@link Tier}: rows are normalized to the 10-column layout in
+ * canonical form and, once a segment's newest row is older than the configured age, collapsed
+ * into one row per patient per hour or day; such a row keeps how many raw rows it stands for in a
+ * trailing {@code samples} column, then how many of them had each metric and its min and max
+ * ({@link VitalsSegments.Tally}), so later merges and rollups weight each average by its own count
+ * and keep the true extremes. Rewrites
+ * go to a temp file and are swapped in with
+ * {@link VitalsSegments#replace}, so queries see either the old segment or the new one.
+ * The active segment is never touched.
+ */
+public final class VitalsCompactor implements Closeable {
+    /** Ordered: a segment is only ever rewritten to a higher tier. */
+    public enum Tier {
+        /** As written by the ingest path. */
+        RAW,
+        /** Every row in the 10-column layout, numbers and timestamps in canonical form. */
+        NORMALIZED,
+        /** One averaged row per patient per hour. */
+        HOURLY,
+        /** One averaged row per patient per day. */
+        DAILY
+    }
+
+    private final VitalsSegments segments;
+    private final Duration hourlyAfter, dailyAfter;
+    private ScheduledExecutorService timer;
+
+    /**
+     * @param hourlyAfter age past which segments are downsampled to hourly rows; null = never
+     * @param dailyAfter  age past which segments are downsampled to daily rows; null = never
+     */
+    public VitalsCompactor(VitalsSegments segments, Duration hourlyAfter, Duration dailyAfter) {
+        this.segments = segments;
+        this.hourlyAfter = hourlyAfter;
+        this.dailyAfter = dailyAfter;
+    }
+
+    /** Runs {@link #compactOnce()} every {@code periodMillis} on a daemon thread. */
+    public synchronized void start(long periodMillis) {
+        if (timer != null) return;
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "vitals-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay(() -> {
+            try { compactOnce(); } catch (IOException ignored) {}   // retried next pass
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override public synchronized void close() {
+        if (timer != null) timer.shutdown();
+        timer = null;
+    }
+
+    /** One pass over the sealed segments. @return segments rewritten */
+    public synchronized int compactOnce() throws IOException {
+        int n = 0;
+        long now = System.currentTimeMillis();
+        for (VitalsSegments.Segment s : segments.segments()) {
+            if (!s.sealed()) continue;
+            Tier target = target(s.footer(), now);
+            if (target.ordinal() <= s.footer().tier) continue;
+            rewrite(s, target);
+            n++;
+        }
+        return n;
+    }
+
+    Tier target(VitalsSegments.Footer f, long now) {
+        if (f.minMillis > f.maxMillis) return Tier.NORMALIZED;             // nothing to bucket by
+        long age = now - f.maxMillis;
+        if (dailyAfter != null && age >= dailyAfter.toMillis()) return Tier.DAILY;
+        if (hourlyAfter != null && age >= hourlyAfter.toMillis()) return Tier.HOURLY;
+        return Tier.NORMALIZED;
+    }
+
+    private void rewrite(VitalsSegments.Segment s, Tier tier) throws IOException {
+        ChronoUnit unit = tier == Tier.DAILY ? ChronoUnit.DAYS : tier == Tier.HOURLY ? ChronoUnit.HOURS : null;
+        List<Bucket> out = new ArrayList<>();
+        Map<String, Bucket> buckets = new LinkedHashMap<>();
+        CsvScanner.scan(s.file(), 0, row -> {
+            if (row.isHeader() || row.fieldCount() == 0) return;
+            VitalsRecord v = trimmed(VitalsLog.fromCsvRow(row));
+            VitalsSegments.Tally t = VitalsSegments.tally(row, v);
+            if (unit == null || v.submittedAt() == null) { out.add(new Bucket(v, t)); return; }
+            String key = v.patientId().toLowerCase(Locale.ROOT) + '|' + v.submittedAt().truncatedTo(unit);
+            buckets.computeIfAbsent(key, k -> new Bucket()).add(v, t);
+        });
+        out.addAll(buckets.values());
+
+        VitalsSegments.Footer f = new VitalsSegments.Footer();
+        f.tier = tier.ordinal();
+        Path tmp = segments.tempFile(s.number());
+        try (OutputStream os = Files.newOutputStream(tmp);
+             BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8))) {
+            bw.write(Dispatchers.csvJoin(VitalsLog.CSV_HEADER) + (unit == null ? "" : "," + VitalsSegments.TALLY_HEADER)); bw.newLine();
+            for (Bucket b : out) {
+                VitalsRecord v = b.toRecord();
+                bw.write(VitalsLog.toCsvLine(v) + (unit == null ? "" : "," + b.tally().columns())); bw.newLine();
+                f.add(v.patientId(), v.submittedAt());
+            }
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) { ch.force(true); }
+        segments.replace(s, tmp, f);
+    }
+
+    private static VitalsRecord trimmed(VitalsRecord v) {
+        return new VitalsRecord(v.patientId().trim(), v.patientName().trim(), v.heartRateBpm(), v.bpSystolic(),
+                v.bpDiastolic(), v.temperatureC(), v.mood().trim(), v.dietNotes().trim(), v.weightKg(), v.submittedAt());
+    }
+
+    /**
+     * Rows of one patient in one hour or day. Numeric metrics are averaged over the rows that have
+     * them, each row weighted by how many of its samples had that metric, and their counts, mins and
+     * maxes are merged into the bucket's {@link VitalsSegments.Tally}; text fields keep the latest non-blank
+     * value. The merged row is stamped with the earliest submittedAt, so it stays inside the
+     * segment's old time range. A row kept as it is is a bucket of its own.
+     */
+    private static final class Bucket {
+        String patientId, patientName = "", mood = "", diet = "";
+        Instant first;
+        long samples;
+        final double[] sum = new double[VitalsSegments.Tally.METRICS];
+        final long[] count = new long[VitalsSegments.Tally.METRICS];
+        final double[] min = new double[VitalsSegments.Tally.METRICS], max = new double[VitalsSegments.Tally.METRICS];
+        VitalsRecord only;   // a row passed through unmerged
+        VitalsSegments.Tally onlyTally;
+
+        Bucket() {}
+        Bucket(VitalsRecord v, VitalsSegments.Tally t) { only = v; onlyTally = t; }
+
+        void add(VitalsRecord v, VitalsSegments.Tally t) {
+            samples += t.samples();
+            if (patientId == null) patientId = v.patientId();
+            if (first == null || v.submittedAt().isBefore(first)) first = v.submittedAt();
+            if (!v.patientName().isBlank()) patientName = v.patientName();
+            if (!v.mood().isBlank()) mood = v.mood();
+            if (!v.dietNotes().isBlank()) diet = v.dietNotes();
+            for (int m = 0; m < count.length; m++) {
+                Number x = VitalsSegments.Tally.metric(v, m);
+                long w = t.count()[m];
+                if (x == null || w == 0) continue;
+                min[m] = count[m] == 0 ? t.min()[m] : Math.min(min[m], t.min()[m]);
+                max[m] = count[m] == 0 ? t.max()[m] : Math.max(max[m], t.max()[m]);
+                sum[m] += x.doubleValue() * w;
+                count[m] += w;
+            }
+        }
+
+        VitalsRecord toRecord() {
+            if (only != null) return only;
+            return new VitalsRecord(patientId, patientName,
+                    avgInt(0), avgInt(1), avgInt(2), avgDbl(3), mood, diet, avgDbl(4), first);
+        }
+        VitalsSegments.Tally tally() { return only != null ? onlyTally : new VitalsSegments.Tally(samples, count, min, max); }
+        private Integer avgInt(int i) { return count[i] == 0 ? null : (int) Math.round(sum[i] / count[i]); }
+        private Double avgDbl(int i) { return count[i] == 0 ? null : Math.round(sum[i] / count[i] * 10) / 10.0; }
+    }
+}
@@ -1,8 +1,49 @@
 package com.carecircle.core;
 
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 public interface VitalsDispatch {
     List<VitalsRecord> listByPatient(String patientId);
     List<VitalsRecord> listAll();
+
+    /** Rows for {@code patientId} with {@code from <= submittedAt < to}; rows without a timestamp are excluded. */
+    default List<VitalsRecord> listByPatientBetween(String patientId, Instant from, Instant to) {
+        return listByPatient(patientId).stream()
+                .filter(v -> v.submittedAt() != null && !v.submittedAt().isBefore(from) && v.submittedAt().isBefore(to))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Reads up to {@code pageSize} rows whose patientId passes {@code patientFilter} (null = all),
+     * continuing after {@code pageToken} (null = from the start). Tokens are opaque and only valid
+     * for the dispatch that issued them; one the store can no longer resume from throws
+     * {@link VitalsPage.ExpiredTokenException}. This default pages over {@link #listAll()}; stores
+     * override it to read lazily.
+     */
+    default VitalsPage listPage(Predicate<String> patientFilter, String pageToken, int pageSize) {
+        List<VitalsRecord> all = listAll();
+        int i = pageToken == null ? 0 : Integer.parseInt(pageToken);
+        List<VitalsRecord> out = new ArrayList<>(Math.max(0, Math.min(pageSize, all.size() - i)));
+        for (; i < all.size() && out.size() < pageSize; i++) {
+            VitalsRecord v = all.get(i);
+            if (patientFilter == null || patientFilter.test(v.patientId())) out.add(v);
+        }
+        return new VitalsPage(out, i < all.size() ? Integer.toString(i) : null);
+    }
+
+    /** Per-metric sum/count/min/max for the patient's calendar month in the system zone. */
+    default MonthlyVitals monthlyAggregate(String patientId, YearMonth month) {
+        ZoneId zone = ZoneId.systemDefault();
+        VitalsRollups r = new VitalsRollups(zone);
+        listByPatientBetween(patientId,
+                month.atDay(1).atStartOfDay(zone).toInstant(),
+                month.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant()).forEach(r::add);
+        return r.get(patientId, month);
+    }
 }
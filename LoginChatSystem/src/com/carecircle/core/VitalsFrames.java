@@ -0,0 +1,97 @@
+package com.carecircle.core;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary framed alternative to the line protocols of {@code VitalsTcpServer} and {@code Server}.
+ * The client opens with the single byte {@link #MAGIC} (0xFF never occurs in UTF-8, so it cannot
+ * start a text command); after that both directions are frames
+ * <pre>
+ * frame := type:u8 id:i32 length:i32 payload[length]      (payload UTF-8 text, at most MAX_PAYLOAD)
+ * </pre>
+ * Requests may be pipelined; each reply carries its request's id. Client frames: {@link #SUBMIT}
+ * (one CSV row; see {@link #isSingleLine}), {@link #QUERY} (a LIST or AVG command),
+ * {@link #JOIN} ({@code group|user}) and {@link #CHAT} for the chat server, and {@link #QUIT}.
+ * Server frames: {@link #OK} / {@link #ERROR} for one-line replies, one {@link #LINE} per reply line
+ * then {@link #END} for queries, and {@link #MESSAGE} (id 0) for chat broadcasts.
+ */
+public final class VitalsFrames {
+    public static final int MAGIC = 0xFF;
+    public static final int HEADER = 9;
+    public static final int MAX_PAYLOAD = 60 * 1024;
+
+    public static final byte SUBMIT = 1, QUERY = 2, JOIN = 3, CHAT = 4, QUIT = 5;
+    public static final byte OK = 16, ERROR = 17, LINE = 18, END = 19, MESSAGE = 20;
+
+    private VitalsFrames() {}
+
+    public record Frame(byte type, int id, byte[] payload) {
+        public String text() { return new String(payload, StandardCharsets.UTF_8); }
+    }
+
+    /** Next frame, or null at a clean end of stream between frames. */
+    public static Frame read(DataInputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) return null;
+        int id = in.readInt();
+        int len = in.readInt();
+        if (len < 0 || len > MAX_PAYLOAD) throw new IOException("Bad frame length " + len);
+        byte[] payload = new byte[len];
+        in.readFully(payload);
+        return new Frame((byte) type, id, payload);
+    }
+
+    public static void write(DataOutputStream out, byte type, int id, String text) throws IOException {
+        byte[] p = text.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(type);
+        out.writeInt(id);
+        out.writeInt(p.length);
+        out.write(p);
+    }
+
+    /** One frame as bytes, for callers that queue buffers instead of writing to a stream. */
+    public static byte[] encode(byte type, int id, String text) {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(HEADER + text.length());
+        try { write(new DataOutputStream(buf), type, id, text); } catch (IOException impossible) { throw new UncheckedIOException(impossible); }
+        return buf.toByteArray();
+    }
+
+    /** Why a {@link #SUBMIT} failing {@link #isSingleLine} is answered {@link #ERROR}. */
+    public static final String MULTILINE = "line breaks are not allowed in a submitted row";
+
+    /**
+     * The stores are line oriented, so a submitted row may not contain a line break, even inside
+     * a quoted cell; such a row is refused with {@link #MULTILINE} rather than altered.
+     */
+    public static boolean isSingleLine(String row) {
+        return row.indexOf('\n') < 0 && row.indexOf('\r') < 0;
+    }
+
+    /**
+     * Lets a text reply writer answer a framed request: every line becomes a {@link #LINE} frame
+     * with the request's id, and a line reading {@code END} becomes the {@link #END} frame.
+     */
+    public static final class LineWriter extends BufferedWriter {
+        private final DataOutputStream out;
+        private final int id;
+        private final StringBuilder line = new StringBuilder();
+
+        public LineWriter(DataOutputStream out, int id) {
+            super(Writer.nullWriter());
+            this.out = out;
+            this.id = id;
+        }
+        @Override public void write(int c) { line.append((char) c); }
+        @Override public void write(char[] c, int off, int len) { line.append(c, off, len); }
+        @Override public void write(String s, int off, int len) { line.append(s, off, off + len); }
+        @Override public void newLine() throws IOException {
+            String l = line.toString();
+            line.setLength(0);
+            if ("END".equals(l)) VitalsFrames.write(out, END, id, "");
+            else VitalsFrames.write(out, LINE, id, l);
+        }
+        @Override public void flush() throws IOException { out.flush(); }
+        @Override public void close() throws IOException { flush(); }   // the connection outlives one reply
+    }
+}
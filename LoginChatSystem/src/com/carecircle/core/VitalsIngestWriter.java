@@ -0,0 +1,208 @@
+package com.carecircle.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Group-commit writer for vitals submissions. Callers enqueue lines on a bounded queue; a single
+ * writer thread drains whatever is pending, encodes it in order and appends the whole batch with
+ * one gathering write on a channel that stays open. Each returned future completes once the
+ * batch is written and, depending on {@link Durability}, forced to disk.
+ */
+public final class VitalsIngestWriter implements Closeable {
+    public enum Durability {
+        /** Complete after the write; the OS decides when it reaches disk. */
+        NONE,
+        /**
+         * The channel is forced every {@code forceMillis}; futures complete after the force that
+         * covers their batch, so a reply can wait up to that long.
+         */
+        PERIODIC,
+        /** Complete only after the batch has been forced. */
+        BATCH;
+
+        public static Durability parse(String s) {
+            try { return s == null ? NONE : valueOf(s.trim().toUpperCase()); }
+            catch (IllegalArgumentException e) { return NONE; }
+        }
+    }
+
+    /** Where coalesced batches go. */
+    public interface Sink extends Closeable {
+        void write(ByteBuffer[] batch) throws IOException;
+        void force() throws IOException;
+
+        /** For sinks whose encoder keeps state: a point that {@link #rollback} can return to. */
+        default int mark() { return 0; }
+
+        /** Forgets encoder state from bytes encoded after {@code mark}, which will not be written. */
+        default void rollback(int mark) {}
+    }
+
+    private static final int MAX_BATCH = 512;
+
+    private record Pending(List<String> lines, CompletableFuture<Void> done) {}
+
+    private final Sink sink;
+    private final Function<String, byte[]> encoder;
+    private final Durability durability;
+    private final long forceMillis;
+    private final BlockingQueue<Pending> queue;
+    private final Thread thread;
+    private final List<Pending> unforced = new ArrayList<>();   // PERIODIC: written, waiting for the next force
+    private volatile boolean closed;
+
+    /**
+     * @param encoder runs on the writer thread, in submission order
+     * @param forceMillis force interval for {@link Durability#PERIODIC}
+     */
+    public VitalsIngestWriter(Sink sink, Function<String, byte[]> encoder, Durability durability,
+                              int queueCapacity, long forceMillis) {
+        this.sink = sink;
+        this.encoder = encoder;
+        this.durability = durability;
+        this.forceMillis = Math.max(1, forceMillis);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.thread = new Thread(this::run, "vitals-ingest-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /** Appends {@code line + '\n'} to {@code file}, keeping one channel open. */
+    public static Sink fileSink(Path file) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new Sink() {
+            @Override public void write(ByteBuffer[] batch) throws IOException {
+                long left = 0;
+                for (ByteBuffer b : batch) left += b.remaining();
+                while (left > 0) left -= ch.write(batch);
+            }
+            @Override public void force() throws IOException { ch.force(false); }
+            @Override public void close() throws IOException { ch.close(); }
+        };
+    }
+
+    /** UTF-8 bytes of the line plus a newline. */
+    public static byte[] csvLine(String line) {
+        return (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Queues one line, blocking while the queue is full.
+     * @return completes when the line's batch is durable per the configured {@link Durability}
+     */
+    public CompletableFuture<Void> submit(String line) {
+        return submitAll(List.of(line));
+    }
+
+    /**
+     * Queues several lines as one entry: they are written together in one batch, and the future
+     * completes (or fails) for all of them at once.
+     */
+    public CompletableFuture<Void> submitAll(List<String> lines) {
+        return enqueue(lines, true);
+    }
+
+    /**
+     * {@link #submitAll} for event-loop threads: never blocks, and with the queue full the future
+     * fails at once with {@link RejectedExecutionException}.
+     */
+    public CompletableFuture<Void> offerAll(List<String> lines) {
+        return enqueue(lines, false);
+    }
+
+    private CompletableFuture<Void> enqueue(List<String> lines, boolean wait) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (closed) { done.completeExceptionally(new IOException("Ingest writer closed")); return done; }
+        if (lines.isEmpty()) { done.complete(null); return done; }
+        Pending p = new Pending(List.copyOf(lines), done);
+        try {
+            if (wait) queue.put(p);
+            else if (!queue.offer(p)) done.completeExceptionally(new RejectedExecutionException("Ingest queue full"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            done.completeExceptionally(e);
+        }
+        return done;
+    }
+
+    /** Stops accepting lines, writes what is queued, forces and closes the sink. */
+    @Override public void close() throws IOException {
+        closed = true;
+        try { thread.join(); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        try { sink.force(); } finally { sink.close(); }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        long nextForce = System.currentTimeMillis() + forceMillis;
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(Math.min(forceMillis, 100), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    commit(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (!unforced.isEmpty() && System.currentTimeMillis() >= nextForce) {
+                forceUnforced();
+                nextForce = System.currentTimeMillis() + forceMillis;
+            }
+        }
+        if (!unforced.isEmpty()) forceUnforced();
+    }
+
+    /** Forces everything written since the last force; its futures complete, or fail, with it. */
+    private void forceUnforced() {
+        try {
+            sink.force();
+            for (Pending p : unforced) p.done().complete(null);
+        } catch (IOException e) {
+            for (Pending p : unforced) p.done().completeExceptionally(e);
+        }
+        unforced.clear();
+    }
+
+    private void commit(List<Pending> batch) {
+        List<ByteBuffer> bufs = new ArrayList<>(batch.size());
+        List<Pending> encoded = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            int mark = bufs.size(), state = sink.mark();
+            try {
+                for (String line : p.lines()) bufs.add(ByteBuffer.wrap(encoder.apply(line)));
+                encoded.add(p);
+            } catch (RuntimeException e) {
+                bufs.subList(mark, bufs.size()).clear();
+                sink.rollback(state);
+                p.done().completeExceptionally(e);
+            }
+        }
+        try {
+            sink.write(bufs.toArray(new ByteBuffer[0]));
+            if (durability == Durability.PERIODIC) { unforced.addAll(encoded); return; }
+            if (durability == Durability.BATCH) sink.force();
+            for (Pending p : encoded) p.done().complete(null);
+        } catch (IOException e) {
+            for (Pending p : encoded) p.done().completeExceptionally(e);
+        }
+    }
+}
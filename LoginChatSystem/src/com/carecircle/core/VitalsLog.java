@@ -0,0 +1,394 @@
+package com.carecircle.core;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Append-only binary vitals log.
+ * <pre>
+ * file   := "CCVL" version:u8 record*
+ * record := tag:u8 length:i32 body[length]
+ * DICT   := code:i32 utf8[length-4]                       (patient ids, names, moods)
+ * ROW    := pid:i32 name:i32 mood:i32 nulls:u8 hr:i32 sys:i32 dia:i32
+ *           tempC:f64 weightKg:f64 submittedAtMillis:i64 dietLen:i32 diet:utf8
+ * </pre>
+ * Strings are written once as DICT records and referenced by code from later rows.
+ * A torn trailing record (crash mid-write) is ignored by readers and cut off by the next {@link Appender}.
+ */
+public final class VitalsLog {
+    public static final String[] CSV_HEADER = {
+            "patientId","patientName","heartRateBpm","bpSystolic","bpDiastolic",
+            "temperatureC","mood","dietNotes","weightKg","submittedAt"
+    };
+
+    private static final byte[] MAGIC = {'C','C','V','L', 1};
+    private static final byte DICT = 1, ROW = 2;
+    private static final int FRAME = 5;                 // tag + length
+    private static final int ROW_FIXED = 4 * 3 + 1 + 4 * 3 + 8 * 3 + 4;
+    private static final int NULL_HR = 1, NULL_SYS = 2, NULL_DIA = 4, NULL_TEMP = 8, NULL_KG = 16, NULL_AT = 32;
+
+    private VitalsLog() {}
+
+    // -------- writing --------
+
+    /**
+     * Single writer for a log file; re-reads the dictionary on open so codes stay stable.
+     * Also usable as a {@link VitalsIngestWriter.Sink} for bytes produced by {@link #encode}.
+     */
+    public static final class Appender implements VitalsIngestWriter.Sink {
+        private final FileChannel ch;
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> unwritten = new ArrayList<>();   // codes assigned since the last write, in order
+
+        private Appender(FileChannel ch) { this.ch = ch; }
+
+        public static Appender open(Path file) throws IOException {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Appender a = new Appender(ch);
+            if (ch.size() < MAGIC.length) {
+                ch.truncate(0);
+                ch.write(ByteBuffer.wrap(MAGIC), 0);
+            } else {
+                Cursor c = new Cursor(file);
+                c.poll(pid -> false, v -> {});
+                for (int i = 0; i < c.dict.size(); i++) a.codes.put(c.dict.get(i), i);
+                ch.truncate(c.offset());           // drop a torn tail, if any
+            }
+            ch.position(ch.size());
+            return a;
+        }
+
+        public synchronized void append(VitalsRecord v) throws IOException {
+            write(new ByteBuffer[]{ByteBuffer.wrap(encode(v))});
+        }
+
+        /**
+         * Appends already-encoded records. If that fails, codes assigned since the last write are
+         * dropped again and the file is cut back, so the next write re-sends their DICT records.
+         */
+        @Override public synchronized void write(ByteBuffer[] batch) throws IOException {
+            long start = ch.position(), left = 0;
+            for (ByteBuffer b : batch) left += b.remaining();
+            try {
+                while (left > 0) left -= ch.write(batch);
+            } catch (IOException e) {
+                rollback(0);
+                try { ch.truncate(start); ch.position(start); } catch (IOException ignored) {}
+                throw e;
+            }
+            unwritten.clear();
+        }
+
+        @Override public synchronized int mark() { return unwritten.size(); }
+
+        /** Unassigns the codes handed out after {@code mark}, whose DICT records will not be written. */
+        @Override public synchronized void rollback(int mark) {
+            List<String> dropped = unwritten.subList(Math.min(mark, unwritten.size()), unwritten.size());
+            for (String s : dropped) codes.remove(s);
+            dropped.clear();
+        }
+
+        /**
+         * Encodes {@code v} as the bytes to append next, including DICT records for strings not seen
+         * before. Assigns codes, so the result must be written, in call order, or {@link #rollback rolled back}.
+         */
+        public synchronized byte[] encode(VitalsRecord v) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+                DataOutputStream out = new DataOutputStream(bytes);
+                int pid = code(nz(v.patientId()), out);
+                int name = code(nz(v.patientName()), out);
+                int mood = code(nz(v.mood()), out);
+                byte[] diet = nz(v.dietNotes()).getBytes(StandardCharsets.UTF_8);
+                int nulls = (v.heartRateBpm() == null ? NULL_HR : 0) | (v.bpSystolic() == null ? NULL_SYS : 0)
+                        | (v.bpDiastolic() == null ? NULL_DIA : 0) | (v.temperatureC() == null ? NULL_TEMP : 0)
+                        | (v.weightKg() == null ? NULL_KG : 0) | (v.submittedAt() == null ? NULL_AT : 0);
+                out.writeByte(ROW); out.writeInt(ROW_FIXED + diet.length);
+                out.writeInt(pid); out.writeInt(name); out.writeInt(mood); out.writeByte(nulls);
+                out.writeInt(v.heartRateBpm() == null ? 0 : v.heartRateBpm());
+                out.writeInt(v.bpSystolic() == null ? 0 : v.bpSystolic());
+                out.writeInt(v.bpDiastolic() == null ? 0 : v.bpDiastolic());
+                out.writeDouble(v.temperatureC() == null ? 0 : v.temperatureC());
+                out.writeDouble(v.weightKg() == null ? 0 : v.weightKg());
+                out.writeLong(v.submittedAt() == null ? 0 : v.submittedAt().toEpochMilli());
+                out.writeInt(diet.length); out.write(diet);
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);          // in-memory stream; cannot happen
+            }
+        }
+
+        /** Forces written records to the storage device. */
+        @Override public void force() throws IOException { ch.force(false); }
+
+        @Override public synchronized void close() throws IOException { ch.close(); }
+
+        private int code(String s, DataOutputStream out) throws IOException {
+            Integer c = codes.get(s);
+            if (c != null) return c;
+            int next = codes.size();
+            codes.put(s, next);
+            unwritten.add(s);
+            byte[] utf = s.getBytes(StandardCharsets.UTF_8);
+            out.writeByte(DICT); out.writeInt(4 + utf.length);
+            out.writeInt(next); out.write(utf);
+            return next;
+        }
+    }
+
+    // -------- reading --------
+
+    /**
+     * Incremental reader: each {@link #poll} continues from where the previous one stopped,
+     * so a cursor can tail a log that is still being appended to.
+     */
+    public static final class Cursor {
+        private final Path file;
+        private final List<String> dict = new ArrayList<>();
+        private long offset;
+
+        public Cursor(Path file) { this.file = file; }
+
+        /** Byte offset just past the last complete record read. */
+        public long offset() { return offset; }
+
+        /** Forgets all state so the next poll starts from the beginning of the file. */
+        public void reset() { dict.clear(); offset = 0; }
+
+        /**
+         * Positions the cursor at the first record boundary at or after {@code target} (or the end
+         * of the file), loading the dictionary entries before it but not decoding any row.
+         */
+        public void seek(long target) throws IOException {
+            reset();
+            if (!Files.exists(file) || target <= 0) return;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = ch.size();
+                if (size < MAGIC.length) return;
+                ByteBuffer m = ByteBuffer.allocate(MAGIC.length);
+                readFully(ch, m, 0);
+                if (!Arrays.equals(m.array(), MAGIC)) throw new IOException("Not a vitals log: " + file);
+                offset = MAGIC.length;
+                ByteBuffer head = ByteBuffer.allocate(FRAME);
+                while (offset < target && offset + FRAME <= size) {
+                    readFully(ch, head.clear(), offset);
+                    byte tag = head.get(0);
+                    int len = head.getInt(1);
+                    if (len < 0 || offset + FRAME + len > size) break;           // torn tail
+                    if (tag == DICT) {
+                        ByteBuffer b = ByteBuffer.allocate(len);
+                        readFully(ch, b, offset + FRAME);
+                        int code = b.getInt(0);
+                        while (dict.size() <= code) dict.add("");
+                        dict.set(code, new String(b.array(), 4, len - 4, StandardCharsets.UTF_8));
+                    }
+                    offset += FRAME + len;
+                }
+            }
+        }
+
+        /**
+         * Reads all complete records after {@link #offset()}. Rows whose patient id fails
+         * {@code pidFilter} are skipped without being decoded.
+         * @return the number of rows delivered
+         */
+        public int poll(Predicate<String> pidFilter, Consumer<VitalsRecord> sink) throws IOException {
+            if (!Files.exists(file)) return 0;
+            int delivered = 0;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = ch.size();
+                if (offset == 0) {
+                    if (size < MAGIC.length) return 0;
+                    ByteBuffer m = ByteBuffer.allocate(MAGIC.length);
+                    readFully(ch, m, 0);
+                    if (!Arrays.equals(m.array(), MAGIC)) throw new IOException("Not a vitals log: " + file);
+                    offset = MAGIC.length;
+                }
+                ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+                Boolean[] match = new Boolean[0];
+                while (offset + FRAME <= size) {
+                    buf.clear().limit(FRAME);
+                    readFully(ch, buf, offset);
+                    byte tag = buf.get(0);
+                    int len = buf.getInt(1);
+                    if (len < 0 || offset + FRAME + len > size) break;           // torn tail
+                    if (buf.capacity() < len) buf = ByteBuffer.allocate(len);
+                    buf.clear().limit(len);
+                    readFully(ch, buf, offset + FRAME);
+                    buf.flip();
+                    if (tag == DICT) {
+                        int code = buf.getInt();
+                        byte[] utf = new byte[len - 4];
+                        buf.get(utf);
+                        while (dict.size() <= code) dict.add("");
+                        dict.set(code, new String(utf, StandardCharsets.UTF_8));
+                    } else if (tag == ROW) {
+                        int pid = buf.getInt(0);
+                        if (match.length <= pid) match = Arrays.copyOf(match, Math.max(pid + 1, match.length * 2));
+                        if (match[pid] == null) match[pid] = pidFilter.test(dict.get(pid));
+                        if (match[pid]) { sink.accept(decodeRow(buf)); delivered++; }
+                    } else {
+                        throw new IOException("Corrupt vitals log at offset " + offset);
+                    }
+                    offset += FRAME + len;
+                }
+            }
+            return delivered;
+        }
+
+        private VitalsRecord decodeRow(ByteBuffer b) {
+            String pid = dict.get(b.getInt()), name = dict.get(b.getInt()), mood = dict.get(b.getInt());
+            int nulls = b.get();
+            int hr = b.getInt(), sys = b.getInt(), dia = b.getInt();
+            double temp = b.getDouble(), kg = b.getDouble();
+            long at = b.getLong();
+            byte[] diet = new byte[b.getInt()];
+            b.get(diet);
+            return new VitalsRecord(pid, name,
+                    (nulls & NULL_HR) != 0 ? null : hr,
+                    (nulls & NULL_SYS) != 0 ? null : sys,
+                    (nulls & NULL_DIA) != 0 ? null : dia,
+                    (nulls & NULL_TEMP) != 0 ? null : temp,
+                    mood, new String(diet, StandardCharsets.UTF_8),
+                    (nulls & NULL_KG) != 0 ? null : kg,
+                    (nulls & NULL_AT) != 0 ? null : Instant.ofEpochMilli(at));
+        }
+    }
+
+    // -------- conversion --------
+
+    /**
+     * One-shot conversion of a vitals CSV (9- or 10-column rows, mixed freely) into a new {@code log}.
+     * Refuses a non-empty target, so running it twice cannot duplicate rows; the log is built
+     * beside it and moved into place only once complete.
+     * @return the number of rows converted
+     */
+    public static int importCsv(Path csv, Path log) throws IOException {
+        if (Files.exists(log) && Files.size(log) > 0) throw new FileAlreadyExistsException(log.toString(), null, "not empty");
+        Path tmp = log.resolveSibling(log.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        int[] n = {0};
+        try {
+            try (Appender a = Appender.open(tmp)) {
+                CsvScanner.scan(csv, 0, row -> {
+                    if (row.isHeader() || row.fieldCount() == 0) return;
+                    a.append(fromCsvRow(row));
+                    n[0]++;
+                });
+                a.force();
+            }
+            Files.move(tmp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return n[0];
+    }
+
+    /**
+     * Writes the log as CSV in the {@code LIST} layout (10-column header, then rows).
+     * Does not write the trailing {@code END}.
+     */
+    public static void exportCsv(Path log, String filterPid, BufferedWriter out) throws IOException {
+        exportCsv(log, 0, filterPid, null, out);
+    }
+
+    /**
+     * Like {@link #exportCsv(Path, String, BufferedWriter)}, but only rows stored at or after byte
+     * offset {@code from} and, when {@code after} is given, submitted after it.
+     * @return the offset just past the last complete record, to pass back in next time
+     */
+    public static long exportCsv(Path log, long from, String filterPid, Instant after, BufferedWriter out) throws IOException {
+        out.write(Dispatchers.csvJoin(CSV_HEADER)); out.newLine();
+        Predicate<String> f = filterPid == null ? pid -> true : pid -> pid.trim().equalsIgnoreCase(filterPid.trim());
+        IOException[] err = {null};
+        Cursor cursor = new Cursor(log);
+        cursor.seek(from);
+        cursor.poll(f, v -> {
+            if (err[0] != null) return;
+            if (after != null && (v.submittedAt() == null || !v.submittedAt().isAfter(after))) return;
+            try { out.write(toCsvLine(v)); out.newLine(); } catch (IOException e) { err[0] = e; }
+        });
+        if (err[0] != null) throw err[0];
+        return cursor.offset();
+    }
+
+    /**
+     * A CSV row of either layout in the {@link #CSV_HEADER} one, fields as written: an old 9-column
+     * row gets an empty patientName, columns past submittedAt are dropped.
+     */
+    public static String toHeaderLayout(List<String> fields) {
+        List<String> out = new ArrayList<>(fields);
+        if (out.size() < CSV_HEADER.length && !out.isEmpty()) out.add(1, "");
+        while (out.size() < CSV_HEADER.length) out.add("");
+        return Dispatchers.csvJoin(out.subList(0, CSV_HEADER.length).toArray(String[]::new));
+    }
+
+    public static String toCsvLine(VitalsRecord v) {
+        return Dispatchers.csvJoin(v.patientId(), v.patientName(),
+                str(v.heartRateBpm()), str(v.bpSystolic()), str(v.bpDiastolic()),
+                str(v.temperatureC()), v.mood(), v.dietNotes(), str(v.weightKg()),
+                str(v.submittedAt()));
+    }
+
+    /** Parses a scanned CSV row without exception-driven number parsing. */
+    static VitalsRecord fromCsvRow(CsvScanner row) {
+        boolean wide = row.fieldCount() >= 10;                 // 10-col rows carry patientName
+        int o = wide ? 1 : 0;
+        return new VitalsRecord(row.field(0), wide ? row.field(1) : "",
+                parseInt(row.field(1 + o)), parseInt(row.field(2 + o)), parseInt(row.field(3 + o)),
+                parseDouble(row.field(4 + o)), row.field(5 + o), row.field(6 + o), parseDouble(row.field(7 + o)),
+                parseInstant(row.field(8 + o)));
+    }
+
+    static Integer parseInt(String s) {
+        s = s.trim();
+        int i = (s.startsWith("-") || s.startsWith("+")) ? 1 : 0;
+        if (i == s.length() || s.length() - i > 9) return null;
+        for (int k = i; k < s.length(); k++) if (s.charAt(k) < '0' || s.charAt(k) > '9') return null;
+        return Integer.parseInt(s);
+    }
+
+    static Double parseDouble(String s) {
+        s = s.trim();
+        int i = (s.startsWith("-") || s.startsWith("+")) ? 1 : 0, digits = 0, dots = 0;
+        for (int k = i; k < s.length(); k++) {
+            char c = s.charAt(k);
+            if (c == '.') dots++;
+            else if (c >= '0' && c <= '9') digits++;
+            else return null;
+        }
+        return (digits == 0 || dots > 1) ? null : Double.parseDouble(s);
+    }
+
+    /** Any ISO-8601 instant or offset date-time; the usual {@code ...Z} form skips the fallbacks. */
+    static Instant parseInstant(String s) {
+        s = s.trim();
+        if (s.length() < 11 || s.charAt(10) != 'T') return null;
+        if (s.charAt(s.length() - 1) == 'Z') {
+            try { return Instant.parse(s); } catch (RuntimeException ignored) {}
+        }
+        try { return OffsetDateTime.parse(s).toInstant(); } catch (RuntimeException e) { return null; }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer b, long pos) throws IOException {
+        while (b.hasRemaining()) {
+            if (ch.read(b, pos + b.position()) < 0) throw new IOException("Unexpected end of vitals log");
+        }
+    }
+    private static String str(Object o) { return o == null ? "" : o.toString(); }
+    private static String nz(String s) { return s == null ? "" : s; }
+}
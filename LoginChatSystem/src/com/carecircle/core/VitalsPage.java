@@ -0,0 +1,13 @@
+package com.carecircle.core;
+
+import java.util.List;
+
+/** One page of vitals rows; pass {@code nextPageToken} back to continue, {@code null} means no more rows. */
+public record VitalsPage(List<VitalsRecord> rows, String nextPageToken) {
+    public boolean hasMore() { return nextPageToken != null; }
+
+    /** A page token or cursor the store can no longer resume from; read again from the start. */
+    public static final class ExpiredTokenException extends IllegalArgumentException {
+        public ExpiredTokenException(String message) { super(message); }
+    }
+}
@@ -34,6 +34,25 @@ public record VitalsRecord(
         );
     }
 
+    /**
+     * Checks a submission before the server stamps it: 9 cells (id,name,hr,sys,dia,temp,mood,diet,kg)
+     * or the old 8 (no name), a patient id, and numbers where numbers go (blank is allowed).
+     * @return null when the row is acceptable, otherwise the reason
+     */
+    public static String validateSubmission(List<String> c) {
+        if (c.size() != 9 && c.size() != 8) return "expected 9 columns (or 8 without patientName), got " + c.size();
+        if (g(c,0).isBlank()) return "patientId is required";
+        int o = c.size() == 9 ? 1 : 0;
+        String[] ints = {"heartRateBpm","bpSystolic","bpDiastolic"};
+        for (int i = 0; i < 3; i++) {
+            String v = g(c,1+o+i);
+            if (!v.isBlank() && pInt(v) == null) return ints[i] + " is not a whole number: " + v.trim();
+        }
+        if (!g(c,4+o).isBlank() && pDbl(g(c,4+o)) == null) return "temperatureC is not a number: " + g(c,4+o).trim();
+        if (!g(c,7+o).isBlank() && pDbl(g(c,7+o)) == null) return "weightKg is not a number: " + g(c,7+o).trim();
+        return null;
+    }
+
     private static String g(List<String> c,int i){ return (i>=0 && i<c.size())?c.get(i):""; }
     private static Integer pInt(String s){ try{ return (s==null||s.isBlank())?null:Integer.valueOf(s.trim()); }catch(Exception e){ return null; } }
     private static Double  pDbl(String s){ try{ return (s==null||s.isBlank())?null:Double.valueOf(s.trim()); }catch(Exception e){ return null; } }
@@ -0,0 +1,75 @@
+package com.carecircle.core;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Incrementally maintained monthly rollups: running sum, count, min and max per patient,
+ * per metric, per calendar month (in {@code zone}). Each {@link #add} is O(1) and so is
+ * every {@link #get}, however much history a patient has. Thread-safe.
+ */
+public final class VitalsRollups {
+    private static final int HR = 0, SYS = 1, DIA = 2, TEMP = 3, KG = 4, METRICS = VitalsSegments.Tally.METRICS;
+
+    private record Key(String patient, YearMonth month) {}
+
+    private static final class Acc {
+        long records;
+        final long[] n = new long[METRICS];
+        final double[] sum = new double[METRICS], min = new double[METRICS], max = new double[METRICS];
+
+        synchronized void add(VitalsRecord v, VitalsSegments.Tally t) {
+            records += t.samples();
+            for (int m = 0; m < METRICS; m++) put(m, VitalsSegments.Tally.metric(v, m), t);
+        }
+        /** {@code x} is the average of {@code t.count()[m]} readings ranging over {@code t.min()[m]..t.max()[m]}. */
+        private void put(int m, Number x, VitalsSegments.Tally t) {
+            long w = t.count()[m];
+            if (x == null || w == 0) return;
+            if (n[m] == 0) { min[m] = t.min()[m]; max[m] = t.max()[m]; }
+            else { min[m] = Math.min(min[m], t.min()[m]); max[m] = Math.max(max[m], t.max()[m]); }
+            n[m] += w;
+            sum[m] += x.doubleValue() * w;
+        }
+        synchronized MonthlyVitals snapshot(String pid, YearMonth ym) {
+            return new MonthlyVitals(pid, ym, records, stat(HR), stat(SYS), stat(DIA), stat(TEMP), stat(KG));
+        }
+        private MonthlyVitals.Stat stat(int m) {
+            return n[m] == 0 ? MonthlyVitals.Stat.EMPTY : new MonthlyVitals.Stat(n[m], sum[m], min[m], max[m]);
+        }
+    }
+
+    private final ZoneId zone;
+    private final ConcurrentHashMap<Key, Acc> months = new ConcurrentHashMap<>();
+
+    public VitalsRollups() { this(ZoneId.systemDefault()); }
+    public VitalsRollups(ZoneId zone) { this.zone = zone; }
+
+    /** Folds one row into its month; rows without patientId or submittedAt are ignored. */
+    public void add(VitalsRecord v) { if (v != null) add(v, VitalsSegments.Tally.of(v)); }
+
+    /**
+     * Folds in a downsampled row as the rows it stands for: each metric counted and bounded as
+     * its {@link VitalsSegments#tally tally} says.
+     */
+    public void add(VitalsRecord v, VitalsSegments.Tally t) {
+        if (v == null || v.patientId() == null || v.patientId().isBlank() || v.submittedAt() == null) return;
+        months.computeIfAbsent(new Key(key(v.patientId()), monthOf(v.submittedAt())), k -> new Acc()).add(v, t);
+    }
+
+    /** Aggregate for the patient and month; {@link MonthlyVitals#empty} when nothing was recorded. */
+    public MonthlyVitals get(String patientId, YearMonth month) {
+        if (patientId == null || month == null) return MonthlyVitals.empty(patientId, month);
+        Acc a = months.get(new Key(key(patientId), month));
+        return a == null ? MonthlyVitals.empty(patientId, month) : a.snapshot(patientId, month);
+    }
+
+    public ZoneId zone() { return zone; }
+    public void clear() { months.clear(); }
+
+    private YearMonth monthOf(Instant at) { return YearMonth.from(at.atZone(zone)); }
+    private static String key(String patientId) { return patientId.trim().toLowerCase(Locale.ROOT); }
+}
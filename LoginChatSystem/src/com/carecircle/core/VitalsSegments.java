@@ -0,0 +1,408 @@
+package com.carecircle.core;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Vitals store rolled into fixed-size CSV segments ({@code seg-00000001.csv}, ...).
+ * When a segment reaches its size limit it is sealed: a small footer ({@code seg-00000001.idx})
+ * records its row count, min/max submittedAt and a bloom filter of its patient ids, and writing
+ * moves on to the next segment. Queries skip sealed segments whose footer rules them out; the
+ * single unsealed (active) segment is always scanned.
+ * The footer lives beside the segment rather than inside it so segments stay plain CSV.
+ */
+public final class VitalsSegments {
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+
+    private static final int FOOTER_MAGIC = 0x43435349;   // "CCSI"
+    private static final String HEADER = Dispatchers.csvJoin(VitalsLog.CSV_HEADER);
+    /**
+     * Downsampled segments add {@code samples}, the raw row count behind each row, after submittedAt,
+     * then a count, min and max per metric (see {@link Tally}).
+     */
+    static final int SAMPLES_COLUMN = VitalsLog.CSV_HEADER.length;
+    static final String TALLY_HEADER = "samples,hrCount,hrMin,hrMax,sysCount,sysMin,sysMax,diaCount,diaMin,diaMax,"
+            + "tempCount,tempMin,tempMax,kgCount,kgMin,kgMax";
+
+    /** Per-segment summary used for pruning. */
+    static final class Footer {
+        long rows;
+        /** How far {@link VitalsCompactor} has rewritten the segment; see {@link VitalsCompactor.Tier}. */
+        int tier;
+        long minMillis = Long.MAX_VALUE, maxMillis = Long.MIN_VALUE;
+        final BloomFilter patients;
+
+        Footer() { this(new BloomFilter()); }
+        Footer(BloomFilter patients) { this.patients = patients; }
+
+        void add(String patientId, Instant at) {
+            rows++;
+            patients.add(patientId == null ? "" : patientId);
+            if (at != null) {
+                minMillis = Math.min(minMillis, at.toEpochMilli());
+                maxMillis = Math.max(maxMillis, at.toEpochMilli());
+            }
+        }
+        /** False only when no row in the segment can match. */
+        boolean mayMatch(String patientId, Instant from, Instant to) {
+            if (patientId != null && !patients.mightContain(patientId)) return false;
+            if (from == null && to == null) return true;
+            if (minMillis > maxMillis) return false;                            // no timestamped rows
+            if (to != null && minMillis >= to.toEpochMilli()) return false;
+            return from == null || maxMillis >= from.toEpochMilli();
+        }
+    }
+
+    /**
+     * Where a scan of the store stopped, {@code <segment>:<tier>:<offset>:<row>}: a byte offset and
+     * the data rows before it. The offset only holds while the segment keeps the tier it had; after
+     * a rewrite that kept every row in order (up to {@link VitalsCompactor.Tier#NORMALIZED}) the scan
+     * resumes by row count instead, and a position in a segment downsampled since has expired.
+     */
+    public record Position(int segment, int tier, long offset, long row) {
+        static final Position START = new Position(0, 0, 0, 0);
+
+        /** @param token from {@link #toString()}, or null for the start of the store */
+        public static Position parse(String token) {
+            if (token == null) return START;
+            String[] t = token.split(":");
+            if (t.length == 3) throw new VitalsPage.ExpiredTokenException("Cursor expired: no row count in " + token);
+            if (t.length != 4) throw new IllegalArgumentException("Bad cursor: " + token);
+            return new Position(Integer.parseInt(t[0]), Integer.parseInt(t[1]), Long.parseLong(t[2]), Long.parseLong(t[3]));
+        }
+        @Override public String toString() { return segment + ":" + tier + ":" + offset + ":" + row; }
+    }
+
+    /** A segment file and, once sealed, its footer. */
+    record Segment(int number, Path file, Footer footer) {
+        boolean sealed() { return footer != null; }
+        /** Compaction tier; the active segment is always raw. */
+        int tier() { return footer == null ? 0 : footer.tier; }
+    }
+
+    private final Path dir;
+    private final Map<Path, Footer> footerCache = new ConcurrentHashMap<>();
+
+    public VitalsSegments(Path dir) { this.dir = dir; }
+
+    public Path dir() { return dir; }
+
+    // -------- reading --------
+
+    /**
+     * Delivers rows of every segment that may hold matches, oldest first. Rows are filtered by
+     * patient id (null = all) and by {@code from <= submittedAt < to} when either bound is given.
+     */
+    public void scan(String patientId, Instant from, Instant to, CsvScanner.RowHandler handler) throws IOException {
+        for (Segment s : segments()) {
+            if (s.sealed() && !s.footer().mayMatch(patientId, from, to)) continue;
+            scanSegment(s, null, patientId, from, to, false, handler);
+        }
+    }
+
+    /**
+     * Delivers rows appended after {@code cursor} (a {@link Position} token from an earlier call, or
+     * null for the start), optionally only those of {@code patientId} submitted after {@code after}.
+     * @return the token for the next call
+     * @throws VitalsPage.ExpiredTokenException when the cursor's segment was downsampled since
+     */
+    public String scanSince(String cursor, String patientId, Instant after, CsvScanner.RowHandler handler) throws IOException {
+        Position at = Position.parse(cursor), next = at;
+        Instant from = after == null ? null : after.plusNanos(1);
+        for (Segment s : segments()) {
+            if (s.number() < at.segment()) continue;
+            next = s.sealed() && !s.footer().mayMatch(patientId, from, null)
+                    ? new Position(s.number(), s.tier(), Files.size(s.file()), s.footer().rows)
+                    : scanSegment(s, at, patientId, from, null, true, handler);
+        }
+        return next.toString();
+    }
+
+    /**
+     * Scans one segment from {@code start} when that is a position in it, else from its beginning, and
+     * returns where the scan stopped. With {@code tail} a last row still being written is left for
+     * the next call (see {@link CsvScanner#tail}).
+     */
+    Position scanSegment(Segment s, Position start, String patientId, Instant from, Instant to, boolean tail,
+                         CsvScanner.RowHandler handler) throws IOException {
+        long offset = 0, skip = 0;
+        long[] rows = {0};
+        if (start != null && start.segment() == s.number()) {
+            if (start.tier() == s.tier() && start.offset() <= Files.size(s.file())) { offset = start.offset(); rows[0] = start.row(); }
+            else if (s.tier() <= VitalsCompactor.Tier.NORMALIZED.ordinal()) skip = start.row();
+            else throw new VitalsPage.ExpiredTokenException("Cursor expired: segment " + s.number() + " was downsampled; start again from 0");
+        }
+        long skipUntil = skip;
+        CsvScanner.RowHandler filtered = row -> {
+            if (row.isHeader() || row.fieldCount() == 0) return;
+            if (rows[0]++ < skipUntil) return;
+            if (patientId != null && !row.fieldEqualsIgnoreCase(0, patientId)) return;
+            if (from != null || to != null) {
+                Instant at = VitalsLog.parseInstant(row.field(timestampColumn(row)));
+                if (at == null || (from != null && at.isBefore(from)) || (to != null && !at.isBefore(to))) return;
+            }
+            handler.row(row);
+        };
+        long end = tail ? CsvScanner.tail(s.file(), offset, filtered) : CsvScanner.scan(s.file(), offset, filtered);
+        return new Position(s.number(), s.tier(), end, rows[0]);
+    }
+
+    /** Current segments in order; sealed footers are read once and cached. */
+    List<Segment> segments() throws IOException {
+        if (!Files.isDirectory(dir)) return List.of();
+        List<Segment> out = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted()::iterator) {
+                int n = segmentNumber(p);
+                if (n < 0) continue;
+                Path idx = idxFile(n);
+                Footer f = Files.exists(idx) ? footerCache.computeIfAbsent(idx, VitalsSegments::readFooterQuietly) : null;
+                out.add(new Segment(n, p, f));
+            }
+        }
+        return out;
+    }
+
+    /** The 10-column layout keeps submittedAt in column 9, the old 9-column one in column 8. */
+    static int timestampColumn(CsvScanner row) { return row.fieldCount() >= 10 ? 9 : 8; }
+
+    /** Rows a downsampled row stands for: its trailing {@code samples} column, 1 for any other row. */
+    public static long samples(CsvScanner row) {
+        if (row.fieldCount() <= SAMPLES_COLUMN) return 1;
+        Integer n = VitalsLog.parseInt(row.field(SAMPLES_COLUMN));
+        return n == null || n < 1 ? 1 : n;
+    }
+
+    /**
+     * What one stored row stands for: {@code samples} raw rows, of which {@code count[m]} had metric
+     * {@code m} (heart rate, systolic, diastolic, temperature, weight, in {@link #METRICS} order),
+     * ranging from {@code min[m]} to {@code max[m]}. The row's own value is the average over those.
+     */
+    public record Tally(long samples, long[] count, double[] min, double[] max) {
+        public static final int METRICS = 5;
+
+        /** A raw row: one sample, each metric it has counted once. */
+        public static Tally of(VitalsRecord v) { return of(v, 1); }
+
+        /** {@code samples} rows that all looked like {@code v}; the best guess for rows without per-metric columns. */
+        static Tally of(VitalsRecord v, long samples) {
+            Tally t = new Tally(samples, new long[METRICS], new double[METRICS], new double[METRICS]);
+            for (int m = 0; m < METRICS; m++) {
+                Number x = metric(v, m);
+                if (x != null) { t.count[m] = samples; t.min[m] = t.max[m] = x.doubleValue(); }
+            }
+            return t;
+        }
+
+        public static Number metric(VitalsRecord v, int m) {
+            return switch (m) {
+                case 0 -> v.heartRateBpm();
+                case 1 -> v.bpSystolic();
+                case 2 -> v.bpDiastolic();
+                case 3 -> v.temperatureC();
+                default -> v.weightKg();
+            };
+        }
+
+        /** The columns written after submittedAt in a downsampled segment, {@link #TALLY_HEADER} order. */
+        String columns() {
+            StringBuilder b = new StringBuilder().append(samples);
+            for (int m = 0; m < METRICS; m++) {
+                b.append(',').append(count[m]);
+                if (count[m] == 0) b.append(",,");
+                else b.append(',').append(num(min[m])).append(',').append(num(max[m]));
+            }
+            return b.toString();
+        }
+
+        private static String num(double d) { return d == Math.rint(d) ? Long.toString((long) d) : Double.toString(d); }
+    }
+
+    /**
+     * The {@link Tally} behind {@code row}, parsed as {@code v}. Rows downsampled before per-metric
+     * columns existed count {@code samples} for every metric they have, with min and max at the average.
+     */
+    public static Tally tally(CsvScanner row, VitalsRecord v) {
+        long samples = samples(row);
+        if (row.fieldCount() < SAMPLES_COLUMN + 1 + 3 * Tally.METRICS) return Tally.of(v, samples);
+        Tally t = new Tally(samples, new long[Tally.METRICS], new double[Tally.METRICS], new double[Tally.METRICS]);
+        for (int m = 0; m < Tally.METRICS; m++) {
+            int col = SAMPLES_COLUMN + 1 + 3 * m;
+            Integer n = VitalsLog.parseInt(row.field(col));
+            Double min = VitalsLog.parseDouble(row.field(col + 1)), max = VitalsLog.parseDouble(row.field(col + 2));
+            if (n == null || n < 0 || (n > 0 && (min == null || max == null))) return Tally.of(v, samples);
+            t.count[m] = n;
+            if (n > 0) { t.min[m] = min; t.max[m] = max; }
+        }
+        return t;
+    }
+
+    /**
+     * The row as clients get it: in the {@link VitalsLog#CSV_HEADER} layout, so without the
+     * {@code samples} column of a downsampled segment (see {@link VitalsLog#toHeaderLayout}).
+     */
+    public static String clientLine(CsvScanner row) {
+        if (row.fieldCount() == VitalsLog.CSV_HEADER.length) return row.line();
+        return VitalsLog.toHeaderLayout(row.fields());
+    }
+
+    // -------- writing --------
+
+    /**
+     * Single writer that appends to the active segment and seals it once it reaches
+     * {@code segmentBytes}. Use {@link #encode} as the {@link VitalsIngestWriter} encoder:
+     * it records each row in the active segment's footer before the bytes are written.
+     */
+    public Writer openWriter(long segmentBytes) throws IOException {
+        Files.createDirectories(dir);
+        return new Writer(segmentBytes);
+    }
+
+    public final class Writer implements VitalsIngestWriter.Sink {
+        private final long segmentBytes;
+        private FileChannel ch;
+        private int number;
+        private Footer active;
+
+        private Writer(long segmentBytes) throws IOException {
+            this.segmentBytes = Math.max(1024, segmentBytes);
+            List<Segment> all = segments();
+            Segment last = all.isEmpty() ? null : all.get(all.size() - 1);
+            if (last == null || last.sealed()) {
+                startSegment(last == null ? 1 : last.number() + 1);
+            } else {
+                number = last.number();
+                active = new Footer();
+                CsvScanner.scan(last.file(), 0, row -> {
+                    if (!row.isHeader() && row.fieldCount() > 0)
+                        active.add(row.field(0), VitalsLog.parseInstant(row.field(timestampColumn(row))));
+                });
+                ch = FileChannel.open(last.file(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+        }
+
+        /** Encodes a CSV line (9 or 10 columns, timestamp last) and records it in the active footer. */
+        public byte[] encode(String line) {
+            List<String> c = Dispatchers.csvSplit(line);
+            String pid = c.isEmpty() ? "" : c.get(0);
+            String ts = c.size() >= 10 ? c.get(9) : c.size() >= 9 ? c.get(8) : "";
+            active.add(pid, VitalsLog.parseInstant(ts));
+            return VitalsIngestWriter.csvLine(line);
+        }
+
+        @Override public void write(ByteBuffer[] batch) throws IOException {
+            long left = 0;
+            for (ByteBuffer b : batch) left += b.remaining();
+            while (left > 0) left -= ch.write(batch);
+            if (ch.size() >= segmentBytes) seal();
+        }
+
+        @Override public void force() throws IOException { ch.force(false); }
+        @Override public void close() throws IOException { ch.close(); }
+
+        private void seal() throws IOException {
+            ch.force(false);
+            ch.close();
+            writeFooter(idxFile(number), active);
+            startSegment(number + 1);
+        }
+
+        private void startSegment(int n) throws IOException {
+            number = n;
+            active = new Footer();
+            ch = FileChannel.open(segmentFile(n), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            if (ch.size() == 0) ch.write(ByteBuffer.wrap(VitalsIngestWriter.csvLine(HEADER)));
+        }
+    }
+
+    /**
+     * Copies a legacy vitals.csv (either layout) into segments. Refuses a directory that already
+     * has segments, so running it twice cannot duplicate rows. @return rows copied
+     */
+    public int importCsv(Path csv, long segmentBytes) throws IOException {
+        if (!segments().isEmpty()) throw new FileAlreadyExistsException(dir.toString(), null, "already has segments");
+        int[] n = {0};
+        try (Writer w = openWriter(segmentBytes)) {
+            CsvScanner.scan(csv, 0, row -> {
+                if (row.isHeader() || row.fieldCount() == 0) return;
+                w.write(new ByteBuffer[]{ByteBuffer.wrap(w.encode(row.line()))});
+                n[0]++;
+            });
+            w.force();
+        }
+        return n[0];
+    }
+
+    /**
+     * Swaps a rewritten copy of sealed segment {@code s} into place. The data file is moved first:
+     * a reader that lists segments in between pairs the new rows with the old footer, which is
+     * still a superset of them as long as the rewrite only drops or merges rows.
+     */
+    void replace(Segment s, Path rewritten, Footer f) throws IOException {
+        Files.move(rewritten, s.file(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path idx = idxFile(s.number());
+        writeFooter(idx, f);
+        footerCache.put(idx, f);
+    }
+
+    // -------- files --------
+
+    Path segmentFile(int n) { return dir.resolve(String.format("seg-%08d.csv", n)); }
+    Path idxFile(int n) { return dir.resolve(String.format("seg-%08d.idx", n)); }
+    /** Scratch name for a rewrite; not picked up by {@link #segments()}. */
+    Path tempFile(int n) { return dir.resolve(String.format("seg-%08d.csv.tmp", n)); }
+
+    private static int segmentNumber(Path p) {
+        String name = p.getFileName().toString();
+        if (!name.startsWith("seg-") || !name.endsWith(".csv")) return -1;
+        try { return Integer.parseInt(name.substring(4, name.length() - 4)); }
+        catch (NumberFormatException e) { return -1; }
+    }
+
+    /** Written to a temp file and moved into place, so readers never see a partial footer. */
+    static void writeFooter(Path idx, Footer f) throws IOException {
+        Path tmp = idx.resolveSibling(idx.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            long[] words = f.patients.words();
+            out.writeInt(FOOTER_MAGIC);
+            out.writeLong(f.rows);
+            out.writeLong(f.minMillis);
+            out.writeLong(f.maxMillis);
+            out.writeInt(f.patients.hashes());
+            out.writeInt(words.length);
+            for (long w : words) out.writeLong(w);
+            out.writeByte(f.tier);
+        }
+        Files.move(tmp, idx, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Footer readFooter(Path idx) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(idx)))) {
+            if (in.readInt() != FOOTER_MAGIC) throw new IOException("Bad segment footer: " + idx);
+            long rows = in.readLong(), min = in.readLong(), max = in.readLong();
+            int hashes = in.readInt();
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) words[i] = in.readLong();
+            int tier = in.read();                                              // absent in older footers
+            Footer f = new Footer(new BloomFilter(words, hashes));
+            f.rows = rows; f.minMillis = min; f.maxMillis = max; f.tier = Math.max(0, tier);
+            return f;
+        }
+    }
+
+    /** An unreadable footer disables pruning for that segment instead of hiding its rows. */
+    private static Footer readFooterQuietly(Path idx) {
+        try { return readFooter(idx); }
+        catch (IOException e) {
+            Footer f = new Footer(new BloomFilter(new long[]{-1L}, 1));
+            f.minMillis = Long.MIN_VALUE; f.maxMillis = Long.MAX_VALUE;
+            return f;
+        }
+    }
+}
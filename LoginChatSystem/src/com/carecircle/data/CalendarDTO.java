@@ -42,7 +42,10 @@ public record CalendarDTO(
     }
 
     public static CalendarDTO fromCsvLine(String line) {
-        List<String> c = Dispatchers.csvSplit(line);
+        return fromCsv(Dispatchers.csvSplit(line));
+    }
+
+    public static CalendarDTO fromCsv(List<String> c) {
         UUID id = parseUuid(g(c,0));
         String patientId = g(c,1);
         String patientName = g(c,2);
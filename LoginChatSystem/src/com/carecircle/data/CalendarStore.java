@@ -1,5 +1,6 @@
 package com.carecircle.data;
 
+import com.carecircle.core.CsvScanner;
 import com.carecircle.core.Dispatchers;
 
 import java.io.*;
@@ -47,18 +48,23 @@ public final class CalendarStore {
 
     public List<CalendarDTO> findByPatient(String patientId) {
         if (patientId == null || patientId.isBlank()) return List.of();
-        return findAll().stream().filter(a -> patientId.equalsIgnoreCase(a.patientId())).collect(Collectors.toList());
+        return scan(patientId);
     }
 
     public List<CalendarDTO> findAll() {
+        return scan(null);
+    }
+
+    /** Rows whose patientId (column 1) differs from {@code patientId} (null = all) are skipped undecoded. */
+    private List<CalendarDTO> scan(String patientId) {
         rw.readLock().lock();
         List<CalendarDTO> out = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
-            String header = br.readLine();
-            String line;
-            while ((line = br.readLine()) != null) {
-                try { out.add(CalendarDTO.fromCsvLine(line)); } catch (Exception ignored) {}
-            }
+        try {
+            CsvScanner.scan(file.toPath(), 0, row -> {
+                if (row.isHeader()) return;
+                if (patientId != null && !row.fieldEqualsIgnoreCase(1, patientId)) return;
+                try { out.add(CalendarDTO.fromCsv(row.fields())); } catch (Exception ignored) {}
+            });
         } catch (IOException ignored) {}
         finally { rw.readLock().unlock(); }
         return out;
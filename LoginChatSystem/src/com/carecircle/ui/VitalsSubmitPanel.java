@@ -3,15 +3,14 @@
 // ============================================================================
 package com.carecircle.ui;
 
+import com.carecircle.core.VitalsClient;
+
 import javax.swing.*;
 import javax.swing.border.Border;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.TitledBorder;
 import javax.swing.text.NumberFormatter;
 import java.awt.*;
-import java.io.*;
-import java.net.Socket;
-import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -31,6 +30,8 @@ public final class VitalsSubmitPanel extends JPanel {
     private final JTextArea  taDietNotes   = new JTextArea(3, 16);
     private final JFormattedTextField tfWeightKg  = numericField(true);
     private final JTextArea  taLog         = new JTextArea(6, 40);
+    /** One persistent connection for the panel's lifetime instead of one per submission. */
+    private final VitalsClient client = VitalsClient.shared(HOST, PORT);
 
     private final Border defaultBorder = tfPatientId.getBorder();
     private final String sessionPatientId;
@@ -173,20 +174,7 @@ public final class VitalsSubmitPanel extends JPanel {
     }
 
     private String sendSingle(String line) {
-        try (Socket socket = new Socket(HOST, PORT);
-             BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
-             BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)))
-        {
-            bw.write(line); bw.newLine(); bw.flush();
-            socket.setSoTimeout(1500);
-            String first = br.readLine();
-            if (first == null) return "<no response>";
-            String second = br.ready() ? br.readLine() : null;
-            return second != null ? first + " | " + second : first;
-        } catch (IOException ex)
-        {
-            return "ERROR: " + ex.getMessage();
-        }
+        return client.request(line, 1500);
     }
 
     private static String txt(JTextField tf) { String s = tf.getText(); return s==null?"":s.trim(); }
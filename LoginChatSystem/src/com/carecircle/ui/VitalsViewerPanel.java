@@ -1,20 +1,30 @@
 package com.carecircle.ui;
 
+import com.carecircle.core.Dispatchers;
+import com.carecircle.core.MonthlyVitals;
+import com.carecircle.core.VitalsClient;
 import com.carecircle.core.VitalsDispatch;
+import com.carecircle.core.VitalsPage;
 import com.carecircle.core.VitalsRecord;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.io.Closeable;
+import java.io.IOException;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 public final class VitalsViewerPanel extends JPanel {
+    private static final int PAGE_SIZE = 500;
+    private static final String HOST = "localhost";
+    private static final int PORT = 1234;
+
     private final VitalsDispatch vitals;
+    private SwingWorker<Void, List<VitalsRecord>> pager;   // in-flight Load All, if any
 
     private final JTextField tfPatientId = new JTextField(12);
     private final JButton btnLoad = new JButton("Load");
@@ -22,6 +32,7 @@ public final class VitalsViewerPanel extends JPanel {
     private final JComboBox<String> cbMonth = new JComboBox<>(monthNames());
     private final JSpinner spYear = new JSpinner(new SpinnerNumberModel(Year.now().getValue(), 2000, 2100, 1));
     private final JButton btnMonthlyAvg = new JButton("Monthly Ave");
+    private final JCheckBox cbLive = new JCheckBox("Live");
     private final JLabel lblSummary = new JLabel(" ");
     private final JLabel lblScopeHint = new JLabel(" ");
     private final JLabel lblInfo = new JLabel(" "); // helpful hint / banner
@@ -38,6 +49,8 @@ public final class VitalsViewerPanel extends JPanel {
     private final String sessionPatientName;
     private final String scopeHint;
     private final boolean allowPatientIdTyping;
+    private String liveProviderId;   // scope for Live when not a patient session
+    private Closeable live;          // SUBSCRIBE connection while Live is ticked
 
     public VitalsViewerPanel(VitalsDispatch vitals) {
         this(vitals, null, "", null);
@@ -90,6 +103,9 @@ public final class VitalsViewerPanel extends JPanel {
         filters.add(new JLabel("Year:"));
         filters.add(spYear);
         filters.add(btnMonthlyAvg);
+        cbLive.setToolTipText("Add new vitals to the table as they are submitted.");
+        cbLive.setVisible(sessionPatientId != null);
+        filters.add(cbLive);
         if (!this.scopeHint.isBlank()) {
             lblScopeHint.setText(this.scopeHint);
             lblScopeHint.setForeground(Color.DARK_GRAY);
@@ -146,8 +162,9 @@ public final class VitalsViewerPanel extends JPanel {
         tfPatientId.setText(tfPatientId.getText().trim());
 
         btnLoad.addActionListener(e -> loadByPatient());
-        btnLoadAll.addActionListener(e -> render(vitals.listAll()));
+        btnLoadAll.addActionListener(e -> loadAllPaged());
         btnMonthlyAvg.addActionListener(e -> showMonthlyAvg());
+        cbLive.addActionListener(e -> { if (cbLive.isSelected()) startLive(); else stopLive(); });
         tfPatientId.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
             @Override public void insertUpdate(javax.swing.event.DocumentEvent e) { applyRowFilter(); updateSummary(); }
             @Override public void removeUpdate(javax.swing.event.DocumentEvent e) { applyRowFilter(); updateSummary(); }
@@ -155,7 +172,50 @@ public final class VitalsViewerPanel extends JPanel {
         });
 
         if (sessionPatientId != null) { render(vitals.listByPatient(sessionPatientId)); }
-        else { render(vitals.listAll()); }
+        else { loadAllPaged(); }
+    }
+
+    /**
+     * Offers Live for a provider's panel: rows pushed by the vitals server are limited to the
+     * provider's assigned patients. Patient panels offer Live for their own rows already.
+     */
+    public void enableLiveUpdates(String providerId) {
+        liveProviderId = providerId;
+        cbLive.setVisible(true);
+    }
+
+    private void startLive(){
+        String target = sessionPatientId != null ? sessionPatientId : "ALL";
+        String provider = sessionPatientId != null ? null : liveProviderId;
+        new Thread(() -> {
+            try {
+                Closeable c = VitalsClient.shared(HOST, PORT).subscribe(target, provider, line -> {
+                    VitalsRecord v = VitalsRecord.fromCsv(Dispatchers.csvSplit(line));
+                    SwingUtilities.invokeLater(() -> { addRows(List.of(v)); applyRowFilter(); updateSummary(); });
+                });
+                SwingUtilities.invokeLater(() -> {
+                    if (cbLive.isSelected()) live = c;
+                    else try { c.close(); } catch (IOException ignored) {}
+                });
+            } catch (IOException ex) {
+                SwingUtilities.invokeLater(() -> {
+                    cbLive.setSelected(false);
+                    lblInfo.setText("Live updates unavailable: " + ex.getMessage());
+                });
+            }
+        }, "vitals-viewer-live").start();
+    }
+
+    private void stopLive(){
+        cbLive.setSelected(false);
+        if (live == null) return;
+        try { live.close(); } catch (IOException ignored) {}
+        live = null;
+    }
+
+    @Override public void removeNotify() {
+        super.removeNotify();
+        stopLive();
     }
 
     private void loadByPatient(){
@@ -164,48 +224,85 @@ public final class VitalsViewerPanel extends JPanel {
         render(vitals.listByPatient(pid));
     }
 
+    /** Load All, one page at a time, so the full list is never materialised before it reaches the table. */
+    private void loadAllPaged(){
+        cancelPaging();
+        model.setRowCount(0);
+        btnLoadAll.setEnabled(false);
+        pager = new SwingWorker<>() {
+            boolean expired;   // compaction rewrote rows under the token: load again from the start
+
+            @Override protected Void doInBackground() {
+                String token = null, prev;
+                try {
+                    do {
+                        VitalsPage page = vitals.listPage(null, prev = token, PAGE_SIZE);
+                        if (!page.rows().isEmpty()) publish(page.rows());
+                        token = page.nextPageToken();
+                    } while (token != null && !token.equals(prev) && !isCancelled());   // a token that repeats would never end
+                } catch (VitalsPage.ExpiredTokenException e) {
+                    expired = true;
+                }
+                return null;
+            }
+            @Override protected void process(List<List<VitalsRecord>> pages) {
+                if (isCancelled()) return;
+                for (List<VitalsRecord> p : pages) addRows(p);
+                applyRowFilter();
+                updateSummary();
+            }
+            @Override protected void done() {
+                if (pager != this) return;
+                pager = null;
+                if (expired && !isCancelled()) { loadAllPaged(); return; }
+                btnLoadAll.setEnabled(true);
+                applyRowFilter();
+                updateSummary();
+            }
+        };
+        pager.execute();
+    }
+
+    private void cancelPaging(){
+        if (pager == null) return;
+        pager.cancel(false);   // no interrupt: it would close the store's file channel mid-read
+        pager = null;
+        btnLoadAll.setEnabled(true);
+    }
+
     private void showMonthlyAvg(){
         String pid = resolvePatientId();
         if (pid.isEmpty()) { JOptionPane.showMessageDialog(this, "Enter Patient ID."); return; }
         int month = cbMonth.getSelectedIndex() + 1;
         int year = (Integer) spYear.getValue();
 
-        List<VitalsRecord> rows = vitals.listByPatient(pid).stream()
-                .filter(v -> v.submittedAt()!=null)
-                .filter(v -> {
-                    var z = v.submittedAt().atZone(ZoneId.systemDefault());
-                    return z.getYear()==year && z.getMonthValue()==month;
-                })
-                .collect(Collectors.toList());
-
-        if (rows.isEmpty()) {
+        MonthlyVitals m = vitals.monthlyAggregate(pid, YearMonth.of(year, month));
+        if (m.records() == 0) {
             JOptionPane.showMessageDialog(this, "No data for "+pid+" in "+cbMonth.getSelectedItem()+" "+year);
             return;
         }
 
-        double hr=0,sys=0,dia=0,tc=0,kg=0; int nhr=0,nsys=0,ndia=0,ntc=0,nkg=0;
-        for (VitalsRecord v : rows) {
-            if (v.heartRateBpm()!=null){ hr+=v.heartRateBpm(); nhr++; }
-            if (v.bpSystolic()!=null){ sys+=v.bpSystolic(); nsys++; }
-            if (v.bpDiastolic()!=null){ dia+=v.bpDiastolic(); ndia++; }
-            if (v.temperatureC()!=null){ tc+=v.temperatureC(); ntc++; }
-            if (v.weightKg()!=null){ kg+=v.weightKg(); nkg++; }
-        }
-
         String msg = "<html><h3>Monthly Average for " + pid + " (" + cbMonth.getSelectedItem() + " " + year + ")</h3>"
                 + "<ul>"
-                + "<li>Heart Rate: " + avg(hr,nhr) + " bpm</li>"
-                + "<li>BP Systolic: " + avg(sys,nsys) + " mmHg</li>"
-                + "<li>BP Diastolic: " + avg(dia,ndia) + " mmHg</li>"
-                + "<li>Temp: " + avg(tc,ntc) + " °C</li>"
-                + "<li>Weight: " + avg(kg,nkg) + " kg</li>"
+                + "<li>Heart Rate: " + avg(m.heartRateBpm()) + " bpm</li>"
+                + "<li>BP Systolic: " + avg(m.bpSystolic()) + " mmHg</li>"
+                + "<li>BP Diastolic: " + avg(m.bpDiastolic()) + " mmHg</li>"
+                + "<li>Temp: " + avg(m.temperatureC()) + " °C</li>"
+                + "<li>Weight: " + avg(m.weightKg()) + " kg</li>"
                 + "</ul>"
-                + "<div style='margin-top:6px'>Records: " + rows.size() + "</div></html>";
+                + "<div style='margin-top:6px'>Records: " + m.records() + "</div></html>";
         JOptionPane.showMessageDialog(this, msg, "Monthly Ave", JOptionPane.INFORMATION_MESSAGE);
     }
 
     private void render(List<VitalsRecord> list){
+        cancelPaging();
         model.setRowCount(0);
+        addRows(list);
+        applyRowFilter();
+        updateSummary();
+    }
+
+    private void addRows(List<VitalsRecord> list){
         var fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
         for (VitalsRecord v : list){
             model.addRow(new Object[]{
@@ -220,8 +317,6 @@ public final class VitalsViewerPanel extends JPanel {
                     v.submittedAt()==null?"":fmt.format(v.submittedAt())
             });
         }
-        applyRowFilter();
-        updateSummary();
     }
 
     private String resolvePatientId() {
@@ -283,6 +378,6 @@ public final class VitalsViewerPanel extends JPanel {
         }
         return m;
     }
-    private static String avg(double sum,int n){ return n==0?"—":String.format("%.2f", sum/n); }
+    private static String avg(MonthlyVitals.Stat s){ return s.count()==0?"—":String.format("%.2f", s.average()); }
     private static String nz(String s){ return s==null?"":s; }
 }
\ No newline at end of file